@@ -0,0 +1,56 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+public class MappedRANGSData extends RANGSData {
+
+  /* RANGS files mapped into memory with FileChannel.map.
+  ** Reads decode straight out of the mapped buffers, so
+  ** after the files are opened there are no more system
+  ** calls, only page faults the first time a page is hit.
+  ** Absolute gets never move the buffer position, so one
+  ** instance can be read from several threads.
+  *************************************/
+
+  private ByteBuffer cel, rim;
+
+  MappedRANGSData(int res, File celFile, File catFile, File rimFile) throws IOException {
+    super(res);
+    cel = map(celFile);
+    readCat(map(catFile));
+    rim = map(rimFile);
+  }
+
+  static ByteBuffer map(File f) throws IOException {
+    // maps the whole of file f read only.  The mapping
+    // stays valid after the channel is closed.
+    RandomAccessFile raf = new RandomAccessFile(f, "r");
+    try {
+      FileChannel ch = raf.getChannel();
+      ByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+      b.order(ByteOrder.LITTLE_ENDIAN);
+      return b;
+    } finally {
+      raf.close();
+    }
+  }
+
+  public int celByte(long pos) {
+    return cel.get((int)pos) & 0xff;
+  }
+
+  public int celInt(long pos) {
+    return cel.getInt((int)pos);
+  }
+
+  public int rimInt(long pos) {
+    return rim.getInt((int)pos);
+  }
+
+  public void close() {
+    // mappings are released when the buffers are collected.
+    cel = null;
+    rim = null;
+  }
+
+}
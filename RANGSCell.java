@@ -0,0 +1,154 @@
+public class RANGSCell {
+
+  /* The decoded polygons of one 1x1 degree RANGS cell,
+  ** packed into int arrays so that drawing a cached cell
+  ** never goes back to the files.
+  **
+  ** Polygons are kept in the order they are drawn, each
+  ** one followed by the polygons nested in it (land, then
+  ** its lakes, islands, ponds).  A polygon is a list of
+  ** pieces; a piece is a run of vertices that came either
+  ** from the cel file (1 to 6 points) or from the rim file.
+  *************************************/
+
+  // per polygon: level, polyID, first piece
+  private int polys[];
+  private int nPolys = 0;
+  // per piece: the piece byte from the cel file, first vertex
+  private int pieces[];
+  private int nPieces = 0;
+  // x, y of each vertex in micro-degrees
+  private int xy[];
+  private int nVertices = 0;
+
+  /******************
+  ** Constructors
+  ******************/
+
+  RANGSCell() {
+    polys = new int[3*4];
+    pieces = new int[2*16];
+    xy = new int[2*64];
+  }
+
+  RANGSCell(int polys[], int pieces[], int xy[]) {
+    // a cell already decoded into arrays laid out as below.
+    this.polys = polys;
+    this.pieces = pieces;
+    this.xy = xy;
+    nPolys = polys.length/3;
+    nPieces = pieces.length/2;
+    nVertices = xy.length/2;
+  }
+
+  /*******************
+  ** Methods
+  *******************/
+
+  public int polygons() {
+    return nPolys;
+  }
+
+  public int level(int p) {
+    return polys[3*p];
+  }
+
+  public int polyID(int p) {
+    return polys[3*p + 1];
+  }
+
+  public int firstPiece(int p) {
+    return polys[3*p + 2];
+  }
+
+  public int endPiece(int p) {
+    // one past the last piece of polygon p.
+    return (p + 1 < nPolys) ? polys[3*(p + 1) + 2] : nPieces;
+  }
+
+  public int pieces() {
+    return nPieces;
+  }
+
+  public int piece(int k) {
+    // the piece byte of piece k, as in the cel file.
+    return pieces[2*k];
+  }
+
+  public int flg(int k) {
+    // the level of detail flag of piece k.
+    return pieces[2*k] >> 4;
+  }
+
+  public boolean isRim(int k) {
+    // true if piece k came from the rim file.
+    return (pieces[2*k] & 7) == 7;
+  }
+
+  public int firstVertex(int k) {
+    return pieces[2*k + 1];
+  }
+
+  public int endVertex(int k) {
+    // one past the last vertex of piece k.
+    return (k + 1 < nPieces) ? pieces[2*(k + 1) + 1] : nVertices;
+  }
+
+  public int x(int v) {
+    return xy[2*v];
+  }
+
+  public int y(int v) {
+    return xy[2*v + 1];
+  }
+
+  public int vertices() {
+    return nVertices;
+  }
+
+  public long sizeInBytes() {
+    // approximate heap used by this cell: the object and
+    // its three arrays, 16 byte headers each.
+    return 32 + 3*16 + 4*(polys.length + pieces.length + xy.length);
+  }
+
+  void addPolygon(int lvl, int polyID) {
+    if (3*nPolys == polys.length) polys = grow(polys);
+    polys[3*nPolys] = lvl;
+    polys[3*nPolys + 1] = polyID;
+    polys[3*nPolys + 2] = nPieces;
+    nPolys++;
+  }
+
+  void addPiece(int piece) {
+    if (2*nPieces == pieces.length) pieces = grow(pieces);
+    pieces[2*nPieces] = piece;
+    pieces[2*nPieces + 1] = nVertices;
+    nPieces++;
+  }
+
+  void addVertex(int x, int y) {
+    if (2*nVertices == xy.length) xy = grow(xy);
+    xy[2*nVertices] = x;
+    xy[2*nVertices + 1] = y;
+    nVertices++;
+  }
+
+  void trim() {
+    // drops the spare room left after decoding.
+    polys = copy(polys, 3*nPolys);
+    pieces = copy(pieces, 2*nPieces);
+    xy = copy(xy, 2*nVertices);
+  }
+
+  private static int[] grow(int a[]) {
+    return copy(a, 2*a.length);
+  }
+
+  private static int[] copy(int a[], int len) {
+    int b[] = new int[len];
+    System.arraycopy(a, 0, b, 0, Math.min(len, a.length));
+    return b;
+  }
+
+}
@@ -0,0 +1,375 @@
+import java.io.*;
+import java.nio.*;
+
+public class RANGSLod {
+
+  /* Simplified copies of every cell of one resolution, at
+  ** a few levels of detail, kept in a sidecar file
+  ** rangs(N).lod next to the RANGS files.  A map drawn at a
+  ** scale where a level's tolerance is below a pixel reads
+  ** that level instead of the full cells.
+  **
+  ** A level is made from the full cells by:
+  **  - running Douglas-Peucker over each rim piece (the
+  **    long runs of coastline), keeping its two ends, so
+  **    pieces still meet where they did and every polygon
+  **    still closes;
+  **  - dropping lakes, islands and ponds that lie wholly
+  **    inside the cell and are smaller than the tolerance
+  **    both ways, with whatever is nested in them.
+  **  - running the same over each cel piece (the short
+  **    runs that close a polygon, mostly along the cell
+  **    edges) between the points it has on the cell border,
+  **    which are kept, so cells still meet their neighbours.
+  **
+  ** The file, little-endian like the RANGS files:
+  **   int    magic 'RLOD', version, resolution, levels
+  **   long   length of the cel file, of the rim file
+  **   int    tolerance of each level, in micro-degrees
+  **   int    per level, per cell (as the cat file): offset
+  **          of the cell's record, 0 if it is no different
+  **          from the full cell
+  **   then the records, all numbers varints as in a pack
+  **   (PackedRANGSData): the length of the rest of the
+  **   record, number of polygons, then per polygon level,
+  **   polyID (zigzag), number of pieces, then per piece the
+  **   piece byte (one byte), its number of points and its
+  **   points.  A point is x and y less the point before
+  **   (zigzag), the first less the cell's south west
+  **   corner, in micro-degrees.
+  ** Most cells (open ocean, cells with no long coastline)
+  ** come out as they went in and have no record at all.
+  ** A cell that comes out the same as at the level before
+  ** points at the same record.  The two lengths tell a
+  ** sidecar left over from other RANGS files, which is not
+  ** used.
+  *************************************/
+
+  public static final int MAGIC = 0x444f4c52, VERSION = 2;
+  // default levels: 1/64, 1/16 and 1/4 of a degree.
+  public static final int TOLERANCES[] = {15625, 62500, 250000};
+  private static final int HEADER = 4*4 + 2*8;
+
+  private int resolution;
+  private int tolerance[];
+  private IntBuffer index;   // offset of each record, level by level
+  private ByteBuffer b;
+
+  /******************
+  ** Constructors
+  ******************/
+
+  private RANGSLod(int res, File f, File cel, File rim) throws IOException {
+    b = MappedRANGSData.map(f);
+    if (b.capacity() < HEADER || b.getInt(0) != MAGIC) throw new IOException(f + " is not a LOD file");
+    if (b.getInt(4) != VERSION) throw new IOException(f + ": LOD version not known");
+    if (b.getInt(8) != res) throw new IOException(f + " is for resolution " + b.getInt(8));
+    if (b.getLong(16) != cel.length() || b.getLong(24) != rim.length())
+      throw new IOException(f + " was made from other RANGS files");
+    resolution = res;
+    tolerance = new int[b.getInt(12)];
+    for (int l = 0; l < tolerance.length; l++) tolerance[l] = b.getInt(HEADER + 4*l);
+    b.position(HEADER + 4*tolerance.length);
+    index = b.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    b.position(0);
+  }
+
+  public static RANGSLod open(File dir, int res) throws IOException {
+    // the sidecar of resolution res in dir.
+    return new RANGSLod(res, file(dir, res),
+                        new File(dir, "rangs(" + res + ").cel"), new File(dir, "gshhs(" + res + ").rim"));
+  }
+
+  public static File file(File dir, int res) {
+    return new File(dir, "rangs(" + res + ").lod");
+  }
+
+  /*******************
+  ** Methods
+  *******************/
+
+  public int resolution() {
+    return resolution;
+  }
+
+  public int levels() {
+    return tolerance.length;
+  }
+
+  public double tolerance(int level) {
+    // in degrees.
+    return tolerance[level]*0.000001;
+  }
+
+  public int levelFor(double pixelsPerDegree, double maxPixels)
+  {
+    /* the coarsest level whose points are at most
+    ** maxPixels off the full coastline at pixelsPerDegree,
+    ** or -1 if even the finest is too coarse.
+    */
+    for (int l = tolerance.length - 1; l >= 0; l--)
+      if (tolerance(l)*pixelsPerDegree <= maxPixels) return l;
+    return -1;
+  }  // levelFor
+
+  public RANGSCell getCell(int level, int ix, int iy)
+  {
+    // the cell at longitude ix (0..359) and latitude iy
+    // (89..-90), as simplified for level.  null if that is
+    // the full cell.
+    int pos = index.get(level*RANGSData.CELLS + (89-iy)*360+ix);
+    if (pos == 0) return null;
+    byte r[] = record(pos);
+    RANGSCell c = new RANGSCell();
+    int at[] = {0};   // where in r
+    int nPolys, nPieces, n, p, k, v;
+    int x = ix*1000000, y = iy*1000000;
+
+    nPolys = PackedRANGSData.varint(r, at);
+    for (p = 0; p < nPolys; p++) {
+      int lvl = PackedRANGSData.varint(r, at);
+      c.addPolygon(lvl, PackedRANGSData.unzigzag(PackedRANGSData.varint(r, at)));
+      nPieces = PackedRANGSData.varint(r, at);
+      for (k = 0; k < nPieces; k++) {
+        c.addPiece(r[at[0]++] & 0xff);
+        n = PackedRANGSData.varint(r, at);
+        for (v = 0; v < n; v++) {
+          x += PackedRANGSData.unzigzag(PackedRANGSData.varint(r, at));
+          y += PackedRANGSData.unzigzag(PackedRANGSData.varint(r, at));
+          c.addVertex(x, y);
+        }
+      }
+    }
+    c.trim();
+    return c;
+  }  // getCell
+
+  private byte[] record(int pos)
+  {
+    // the bytes of the record at pos, after its length.
+    int len = 0, shift = 0, a;
+    do {
+      a = b.get(pos++);
+      len |= (a & 0x7f) << shift;
+      shift += 7;
+    } while (a < 0);
+    byte r[] = new byte[len];
+    ByteBuffer d = b.duplicate();  // its own position, for this thread
+    d.position(pos);
+    d.get(r);
+    return r;
+  }  // record
+
+  public long bytes(int level)
+  {
+    // bytes of the records level has of its own, not
+    // shared with the level before.
+    long n = 0;
+    for (int i = 0; i < RANGSData.CELLS; i++) {
+      int pos = index.get(level*RANGSData.CELLS + i);
+      if (pos == 0 || level > 0 && pos == index.get((level-1)*RANGSData.CELLS + i)) continue;
+      n += record(pos).length;
+    }
+    return n;
+  }  // bytes
+
+  public void close() {
+    // the mapping is released when the buffer is collected.
+    b = null;
+    index = null;
+  }
+
+  /*******************
+  ** Making the file
+  *******************/
+
+  public static long[][] write(RANGSData d, File dir, int tolerances[]) throws IOException
+  {
+    /* simplifies every cell of d at each of tolerances
+    ** (micro-degrees, finest first) and writes the sidecar
+    ** into dir.  Returns, per level, the vertices of all
+    ** cells and the bytes of the records written for it.
+    */
+    int res = d.resolution(), n = tolerances.length, l, i;
+    long stats[][] = new long[n][2];
+    int offset[] = new int[n*RANGSData.CELLS];
+    File f = file(dir, res), tmp = new File(dir, f.getName() + ".tmp");
+    ByteArrayOutputStream records = new ByteArrayOutputStream(1 << 20);
+    byte full[], last[], rec[];
+
+    int start = HEADER + 4*n + 4*offset.length;
+    for (i = 0; i < RANGSData.CELLS; i++) {
+      RANGSCell c = d.decodeCell(i % 360, 89 - i/360);
+      last = full = record(c, i % 360, 89 - i/360);
+      for (l = 0; l < n; l++) {
+        RANGSCell s = simplify(c, i % 360, 89 - i/360, tolerances[l]);
+        rec = record(s, i % 360, 89 - i/360);
+        stats[l][0] += s.vertices();
+        if (java.util.Arrays.equals(rec, full)) continue;  // offset 0
+        if (java.util.Arrays.equals(rec, last)) {
+          offset[l*RANGSData.CELLS + i] = offset[(l-1)*RANGSData.CELLS + i];
+          continue;
+        }
+        offset[l*RANGSData.CELLS + i] = start + records.size();
+        records.write(rec);
+        stats[l][1] += rec.length;
+        last = rec;
+      }
+    }
+
+    ByteBuffer h = ByteBuffer.allocate(start).order(ByteOrder.LITTLE_ENDIAN);
+    h.putInt(MAGIC).putInt(VERSION).putInt(res).putInt(n);
+    h.putLong(new File(dir, "rangs(" + res + ").cel").length());
+    h.putLong(new File(dir, "gshhs(" + res + ").rim").length());
+    for (l = 0; l < n; l++) h.putInt(tolerances[l]);
+    for (i = 0; i < offset.length; i++) h.putInt(offset[i]);
+
+    OutputStream o = new BufferedOutputStream(new FileOutputStream(tmp));
+    try {
+      o.write(h.array());
+      records.writeTo(o);
+    } finally {
+      o.close();
+    }
+    if (f.exists() && !f.delete()) throw new IOException("can't replace " + f);
+    if (!tmp.renameTo(f)) throw new IOException("can't rename " + tmp + " to " + f);
+    return stats;
+  }  // write
+
+  private static byte[] record(RANGSCell c, int ix, int iy)
+  {
+    // the file record of c, the cell at ix, iy, length first.
+    ByteArrayOutputStream r = new ByteArrayOutputStream(64), o;
+    int x = ix*1000000, y = iy*1000000, p, k, v;
+
+    PackedRANGSData.putVarint(r, c.polygons());
+    for (p = 0; p < c.polygons(); p++) {
+      PackedRANGSData.putVarint(r, c.level(p));
+      PackedRANGSData.putVarint(r, PackedRANGSData.zigzag(c.polyID(p)));
+      PackedRANGSData.putVarint(r, c.endPiece(p) - c.firstPiece(p));
+      for (k = c.firstPiece(p); k < c.endPiece(p); k++) {
+        r.write(c.piece(k));
+        PackedRANGSData.putVarint(r, c.endVertex(k) - c.firstVertex(k));
+        for (v = c.firstVertex(k); v < c.endVertex(k); v++) {
+          PackedRANGSData.putVarint(r, PackedRANGSData.zigzag(c.x(v) - x));
+          PackedRANGSData.putVarint(r, PackedRANGSData.zigzag(c.y(v) - y));
+          x = c.x(v);
+          y = c.y(v);
+        }
+      }
+    }
+    o = new ByteArrayOutputStream(r.size() + 5);
+    PackedRANGSData.putVarint(o, r.size());
+    o.write(r.toByteArray(), 0, r.size());
+    return o.toByteArray();
+  }  // record
+
+  static RANGSCell simplify(RANGSCell c, int ix, int iy, int tol)
+  {
+    // c, the cell at ix, iy, at tolerance tol micro-degrees,
+    // as described above.
+    RANGSCell s = new RANGSCell();
+    boolean keep[] = new boolean[c.vertices()];
+    int p, q, k, v, a;
+
+    for (p = 0; p < c.polygons(); p++) {
+      if (c.level(p) > 0 && small(c, p, tol)) {
+        // skip p and the polygons nested in it.
+        for (q = p + 1; q < c.polygons() && c.level(q) > c.level(p); q++);
+        p = q - 1;
+        continue;
+      }
+      s.addPolygon(c.level(p), c.polyID(p));
+      for (k = c.firstPiece(p); k < c.endPiece(p); k++) {
+        s.addPiece(c.piece(k));
+        int first = c.firstVertex(k), end = c.endVertex(k);
+        for (v = first; v < end; v++) keep[v] = true;
+        if (c.isRim(k) && end - first > 2) douglasPeucker(c, first, end - 1, (double)tol*tol, keep);
+        else if (!c.isRim(k)) {
+          // between the points on the cell border.
+          for (a = first, v = first + 1; v < end; v++) {
+            if (v < end - 1 && !onBorder(c, v, ix, iy)) continue;
+            if (v - a > 1) douglasPeucker(c, a, v, (double)tol*tol, keep);
+            a = v;
+          }
+        }
+        for (v = first; v < end; v++) if (keep[v]) s.addVertex(c.x(v), c.y(v));
+      }
+    }
+    s.trim();
+    return s;
+  }  // simplify
+
+  private static boolean onBorder(RANGSCell c, int v, int ix, int iy)
+  {
+    // true if vertex v is on an edge of the cell at ix, iy.
+    int x = c.x(v) - ix*1000000, y = c.y(v) - iy*1000000;
+    return x == 0 || x == 1000000 || y == 0 || y == 1000000;
+  }  // onBorder
+
+  private static boolean small(RANGSCell c, int p, int tol)
+  {
+    // true if polygon p is all rim pieces, so touches no
+    // cell edge, and fits in a tol by tol box.
+    int xmin = Integer.MAX_VALUE, xmax = Integer.MIN_VALUE, ymin = xmin, ymax = xmax, k;
+
+    if (c.firstPiece(p) == c.endPiece(p)) return false;
+    for (k = c.firstPiece(p); k < c.endPiece(p); k++) if (!c.isRim(k)) return false;
+    for (int v = c.firstVertex(c.firstPiece(p)); v < c.endVertex(c.endPiece(p) - 1); v++) {
+      xmin = Math.min(xmin, c.x(v));
+      xmax = Math.max(xmax, c.x(v));
+      ymin = Math.min(ymin, c.y(v));
+      ymax = Math.max(ymax, c.y(v));
+    }
+    return xmax - xmin < tol && ymax - ymin < tol;
+  }  // small
+
+  private static void douglasPeucker(RANGSCell c, int a, int z, double tol2, boolean keep[])
+  {
+    /* marks in keep the vertices between a and z to keep
+    ** so that none left out is more than sqrt(tol2) from
+    ** the chord.  Works from an explicit stack, rim pieces
+    ** can be thousands of points long.
+    */
+    int stack[] = new int[64], top = 0;
+
+    stack[top++] = a;
+    stack[top++] = z;
+    while (top > 0) {
+      z = stack[--top];
+      a = stack[--top];
+      double ax = c.x(a), ay = c.y(a), dx = c.x(z) - ax, dy = c.y(z) - ay;
+      double len2 = dx*dx + dy*dy, worst = -1, d;
+      int far = -1;
+
+      for (int v = a + 1; v < z; v++) {
+        double px = c.x(v) - ax, py = c.y(v) - ay, t = 0;
+        // distance squared to the nearest point of the chord
+        // (a ring's chord is a single point).
+        if (len2 > 0) t = Math.max(0, Math.min(1, (px*dx + py*dy)/len2));
+        px -= t*dx;
+        py -= t*dy;
+        d = px*px + py*py;
+        if (d > worst) {
+          worst = d;
+          far = v;
+        }
+      }
+      if (far < 0 || worst <= tol2) {
+        for (int v = a + 1; v < z; v++) keep[v] = false;
+        continue;
+      }
+      keep[far] = true;
+      if (top + 4 > stack.length) {
+        int t[] = new int[2*stack.length];
+        System.arraycopy(stack, 0, t, 0, top);
+        stack = t;
+      }
+      stack[top++] = a;
+      stack[top++] = far;
+      stack[top++] = far;
+      stack[top++] = z;
+    }
+  }  // douglasPeucker
+
+}
@@ -0,0 +1,175 @@
+import java.io.*;
+
+public class RANGSStore {
+
+  /* All resolutions of the RANGS data in one directory,
+  ** and one cache of decoded cells for all of them.
+  **
+  ** The files of a resolution are opened the first time
+  ** it is asked for and stay open until close(), so moving
+  ** between resolutions costs nothing.  Cells are cached
+  ** under their resolution and cell number, and the whole
+  ** cache, every resolution together, is kept within one
+  ** budget of bytes: going back to a resolution used a
+  ** moment ago finds its cells still there, unless other
+  ** cells have crowded them out since.
+  **
+  ** Each resolution's cell classes (RANGSData.cellClass)
+  ** are worked out as it is opened.
+  **
+  ** Where rangsLod has made a rangs(N).lod sidecar, the
+  ** simplified cells in it are had from here too, cached
+  ** alongside the full ones.
+  **
+  ** Safe to share between threads.  Cells are decoded
+  ** outside the cache lock, so two threads may now and
+  ** then decode the same cell; the second one wins.
+  *************************************/
+
+  private File dir;
+  private RANGSData data[] = new RANGSData[RANGSData.RESOLUTIONS];
+  private boolean missing[] = new boolean[RANGSData.RESOLUTIONS];
+  private RANGSLod lod[] = new RANGSLod[RANGSData.RESOLUTIONS];
+  private boolean noLod[] = new boolean[RANGSData.RESOLUTIONS];
+  private Cache cellCache;
+
+  /******************
+  ** Constructors
+  ******************/
+
+  RANGSStore(File dir, long maxBytes) {
+    // the resolutions found in dir, cached in maxBytes.
+    this.dir = dir;
+    cellCache = new Cache(maxBytes);
+  }
+
+  RANGSStore(RANGSData d, long maxBytes) {
+    // just the one resolution, already open.
+    this((File)null, maxBytes);
+    data[d.resolution()] = d;
+    for (int r = 0; r < missing.length; r++) missing[r] = noLod[r] = (data[r] == null);
+  }
+
+  /*******************
+  ** Methods
+  *******************/
+
+  public synchronized RANGSData data(int r)
+  {
+    /* the files of resolution r, opened now if they
+    ** haven't been.  null if they aren't there; opening
+    ** them is only tried once.
+    */
+    if (data[r] == null && !missing[r]) {
+      try {
+        data[r] = RANGSData.open(dir, r);
+        data[r].classify();
+      } catch (IOException e) {
+        missing[r] = true;
+      }
+    }
+    return data[r];
+  }  // data
+
+  public synchronized RANGSData open(int r) throws IOException
+  {
+    // as data(r), but says why resolution r can't be had.
+    if (data[r] == null) {
+      if (dir == null) throw new IOException("resolution " + r + " is not in this store");
+      data[r] = RANGSData.open(dir, r);
+      data[r].classify();
+      missing[r] = false;
+    }
+    return data[r];
+  }  // open
+
+  public synchronized RANGSLod lod(int r)
+  {
+    /* the simplified cells of resolution r, or null if
+    ** there is no usable sidecar for it.  As for data(r),
+    ** opening it is only tried once.
+    */
+    if (lod[r] == null && !noLod[r] && dir != null) {
+      try {
+        lod[r] = RANGSLod.open(dir, r);
+      } catch (IOException e) {
+        noLod[r] = true;
+      }
+    }
+    return lod[r];
+  }  // lod
+
+  public boolean[] available()
+  {
+    // which resolutions there are files for.
+    boolean have[] = new boolean[data.length];
+    for (int r = 0; r < have.length; r++) have[r] = data(r) != null;
+    return have;
+  }  // available
+
+  public RANGSCell getCell(RANGSData d, int ix, int iy) throws IOException
+  {
+    // cell ix, iy of d, from the cache if it's there.
+    return getCell(d, -1, ix, iy);
+  }  // getCell
+
+  public RANGSCell getCell(RANGSData d, int level, int ix, int iy) throws IOException
+  {
+    // cell ix, iy of d simplified to level of its sidecar,
+    // or in full if level is -1.
+    long key = ((long)d.resolution() << 40) | ((long)(level + 1) << 32) | ((89-iy)*360+ix);
+    RANGSCell c;
+
+    synchronized (cellCache) {
+      c = (RANGSCell)cellCache.get(key);
+    }
+    if (c != null) return c;
+    if (level < 0) c = d.decodeCell(ix, iy);
+    else if ((c = lod(d.resolution()).getCell(level, ix, iy)) == null) return getCell(d, -1, ix, iy);
+    synchronized (cellCache) {
+      cellCache.put(key, c, c.sizeInBytes());
+    }
+    return c;
+  }  // getCell
+
+  public long maxBytes() {
+    return cellCache.maxSize();
+  }
+
+  public String cacheStats()
+  {
+    // hit rate and memory of the cell cache.
+    synchronized (cellCache) {
+      long hits = cellCache.hits(), misses = cellCache.misses();
+      long n = cellCache.size(), bytes = cellCache.bytes();
+      return "hits " + hits + " misses " + misses
+        + " hit rate " + (hits + misses == 0 ? 0 : 100*hits/(hits + misses)) + "%"
+        + " evictions " + cellCache.evictions()
+        + " cells " + n + " bytes " + bytes + " bytes/cell " + (n == 0 ? 0 : bytes/n);
+    }
+  }  // cacheStats
+
+  public synchronized void close() throws IOException
+  {
+    // closes the files of every resolution.  The store can
+    // be used again after: files are reopened as needed.
+    IOException failed = null;
+
+    for (int r = 0; r < data.length; r++) {
+      try {
+        if (data[r] != null) data[r].close();
+      } catch (IOException e) {
+        failed = e;
+      }
+      if (lod[r] != null) lod[r].close();
+      data[r] = null;
+      lod[r] = null;
+      missing[r] = noLod[r] = (dir == null);
+    }
+    synchronized (cellCache) {
+      cellCache.clear();
+    }
+    if (failed != null) throw failed;
+  }  // close
+
+}
@@ -0,0 +1,36 @@
+public interface RANGSVisitor {
+
+  /* Receives the polygons of a box of RANGS cells from
+  ** RANGSGeometry.visit, one cell after another, north row
+  ** first, west to east; in each cell the polygons in the
+  ** order they are drawn, each one followed by those nested
+  ** in it.
+  **
+  ** A polygon is beginPolygon, its runs of vertices in
+  ** order, then endPolygon.  Vertices are in micro-degrees,
+  ** longitudes moved by 360 degrees where the cell was
+  ** (a box across the date line comes out in one piece).
+  ** The arrays are the caller's own, handed to visit, and
+  ** are written over by the next run: copy out what is to
+  ** be kept.
+  *************************************/
+
+  // a polygon of cell column ix (0..359, or beyond for a
+  // box across the date line) and row iy (latitude of its
+  // south edge).  level is how deep it is nested, 0 for
+  // the outermost; polyID < 0 for a polygon that is a
+  // plain square of the cell.
+  void beginPolygon(int ix, int iy, int level, int polyID);
+
+  // n vertices x[0..n-1], y[0..n-1] of the polygon begun
+  // last.  shore is true for a run from the rim file, the
+  // coastline proper; false for a short run from the cel
+  // file, which mostly follows the cell edge to close the
+  // polygon.  flg is the run's level of detail flag.  A
+  // run longer than the arrays comes in several calls, one
+  // after the other.
+  void run(int x[], int y[], int n, boolean shore, int flg);
+
+  void endPolygon();
+
+}
@@ -0,0 +1,321 @@
+import java.io.*;
+
+public class TilePack {
+
+  /* A tile pyramid in one file: a header, an index with an
+  ** entry for every tile, then the PNGs one after another.
+  **
+  **   int    magic 'RTPK', int version
+  **   int    min zoom, max zoom
+  **   double west, north, east, south  (the box asked for)
+  **   int    detail, fill (1) or outline (0)
+  **   int    number of tiles
+  **   long   offset, int length of the shared ocean tile
+  **   then per tile, zoom by zoom, row by row:
+  **   long   offset, int length (offset 0: not made yet)
+  **
+  ** Numbers are big-endian, as DataOutput writes them.
+  ** Tiles that are all ocean point at one shared PNG.
+  **
+  ** A PNG is written before its index entry, so a pack cut
+  ** short (killed, out of disk) is still good: opening it
+  ** again drops whatever is past the last indexed tile and
+  ** the missing tiles are made again.
+  *************************************/
+
+  public static final int MAGIC = 0x5254504b, VERSION = 1;
+  private static final int HEADER = 4+4 + 4+4 + 4*8 + 4+4 + 4 + 8+4, ENTRY = 8+4;
+
+  private RandomAccessFile f;
+  private boolean writing;
+  private int minZoom, maxZoom, detail;
+  private boolean fill;
+  private double west, north, east, south;
+  // per zoom: first index entry, first column and row, columns and rows
+  private int first[], x0[], y0[], nx[], ny[];
+  private int tiles;
+  private long offset[];
+  private int length[];
+  private long oceanOffset = 0;
+  private int oceanLength = 0;
+  private long end;       // where the next PNG goes
+  private int unsynced = 0;
+
+  /******************
+  ** Constructors
+  ******************/
+
+  TilePack(File file, int minZoom, int maxZoom, double west, double north,
+           double east, double south, int detail, boolean fill) throws IOException {
+    /* opens the pack in file, making it if it is not
+    ** there.  An existing pack must have been made with
+    ** the same zooms, box and detail.
+    */
+    this.minZoom = minZoom;
+    this.maxZoom = maxZoom;
+    this.west = west;
+    this.north = north;
+    this.east = east;
+    this.south = south;
+    this.detail = detail;
+    this.fill = fill;
+    layout();
+
+    boolean old = file.exists() && file.length() > 0;
+    f = new RandomAccessFile(file, "rw");
+    writing = true;
+    if (old) readIndex(file);
+    else writeIndex();
+  }
+
+  private TilePack(File file) throws IOException {
+    // opens an existing pack to read tiles from.
+    f = new RandomAccessFile(file, "r");
+    readHeader();
+    layout();
+    readEntries();
+  }
+
+  public static TilePack open(File file) throws IOException {
+    return new TilePack(file);
+  }
+
+  /*******************
+  ** Methods
+  *******************/
+
+  private void layout()
+  {
+    // works out which tiles of each zoom the box covers.
+    int n = maxZoom - minZoom + 1, k, z;
+
+    first = new int[n];
+    x0 = new int[n];
+    y0 = new int[n];
+    nx = new int[n];
+    ny = new int[n];
+    tiles = 0;
+    for (k = 0; k < n; k++) {
+      z = minZoom + k;
+      double size = 180.0/(1 << z);
+      x0[k] = Math.max(0, (int)Math.floor((west + 180)/size));
+      y0[k] = Math.max(0, (int)Math.floor((90 - north)/size));
+      nx[k] = Math.min(2 << z, (int)Math.ceil((east + 180)/size)) - x0[k];
+      ny[k] = Math.min(1 << z, (int)Math.ceil((90 - south)/size)) - y0[k];
+      if (nx[k] < 0) nx[k] = 0;
+      if (ny[k] < 0) ny[k] = 0;
+      first[k] = tiles;
+      tiles += nx[k]*ny[k];
+    }
+    offset = new long[tiles];
+    length = new int[tiles];
+  }  // layout
+
+  private void writeHeader() throws IOException
+  {
+    f.seek(0);
+    f.writeInt(MAGIC);
+    f.writeInt(VERSION);
+    f.writeInt(minZoom);
+    f.writeInt(maxZoom);
+    f.writeDouble(west);
+    f.writeDouble(north);
+    f.writeDouble(east);
+    f.writeDouble(south);
+    f.writeInt(detail);
+    f.writeInt(fill ? 1 : 0);
+    f.writeInt(tiles);
+    f.writeLong(oceanOffset);
+    f.writeInt(oceanLength);
+  }  // writeHeader
+
+  private void readHeader() throws IOException
+  {
+    f.seek(0);
+    if (f.readInt() != MAGIC) throw new IOException("not a tile pack");
+    if (f.readInt() != VERSION) throw new IOException("tile pack version not known");
+    minZoom = f.readInt();
+    maxZoom = f.readInt();
+    west = f.readDouble();
+    north = f.readDouble();
+    east = f.readDouble();
+    south = f.readDouble();
+    detail = f.readInt();
+    fill = f.readInt() != 0;
+    tiles = f.readInt();
+    oceanOffset = f.readLong();
+    oceanLength = f.readInt();
+  }  // readHeader
+
+  private void writeIndex() throws IOException
+  {
+    // a new pack: header and an empty index.
+    writeHeader();
+    f.write(new byte[tiles*ENTRY]);
+    end = HEADER + (long)tiles*ENTRY;
+    f.setLength(end);
+  }  // writeIndex
+
+  private void readIndex(File file) throws IOException
+  {
+    // an old pack: check it is the same pyramid, then
+    // pick up where it stopped.
+    int n = tiles;
+    double w = west, nn = north, e = east, s = south;
+    int lo = minZoom, hi = maxZoom, d = detail;
+    boolean fl = fill;
+
+    readHeader();
+    if (lo != minZoom || hi != maxZoom || w != west || nn != north || e != east || s != south
+        || d != detail || fl != fill || n != tiles)
+      throw new IOException(file + " holds a different pyramid: zoom " + minZoom + "-" + maxZoom
+                            + ", box " + west + "," + north + "," + east + "," + south);
+    readEntries();
+  }  // readIndex
+
+  private void readEntries() throws IOException
+  {
+    // reads the index, dropping entries that point past the
+    // end of the file, and finds where the next PNG goes.
+    int i;
+    long size = f.length();
+    byte b[] = new byte[tiles*ENTRY];
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(b));
+
+    f.seek(HEADER);
+    f.readFully(b);
+    end = HEADER + (long)tiles*ENTRY;
+    if (oceanOffset + oceanLength > size) oceanOffset = oceanLength = 0;
+    if (oceanOffset != 0) end = Math.max(end, oceanOffset + oceanLength);
+    for (i = 0; i < tiles; i++) {
+      offset[i] = in.readLong();
+      length[i] = in.readInt();
+      if (offset[i] + length[i] > size) offset[i] = length[i] = 0;
+      if (offset[i] != 0) end = Math.max(end, offset[i] + length[i]);
+    }
+  }  // readEntries
+
+  public int tiles() {
+    return tiles;
+  }
+
+  public int done()
+  {
+    // tiles made so far.
+    int i, n = 0;
+    for (i = 0; i < tiles; i++) if (offset[i] != 0) n++;
+    return n;
+  }  // done
+
+  public int zoom(int i)
+  {
+    // zoom of tile number i.
+    int k = first.length - 1;
+    while (first[k] > i) k--;
+    return minZoom + k;
+  }  // zoom
+
+  public int tileX(int i) {
+    int k = zoom(i) - minZoom;
+    return x0[k] + (i - first[k]) % nx[k];
+  }
+
+  public int tileY(int i) {
+    int k = zoom(i) - minZoom;
+    return y0[k] + (i - first[k]) / nx[k];
+  }
+
+  public int index(int z, int x, int y)
+  {
+    // number of tile x, y at zoom z, or -1 if it is not in
+    // the pack.
+    int k = z - minZoom;
+    if (k < 0 || k >= first.length) return -1;
+    if (x < x0[k] || x >= x0[k] + nx[k] || y < y0[k] || y >= y0[k] + ny[k]) return -1;
+    return first[k] + (y - y0[k])*nx[k] + (x - x0[k]);
+  }  // index
+
+  public synchronized boolean has(int i) {
+    return offset[i] != 0;
+  }
+
+  public synchronized boolean isOcean(int i) {
+    return offset[i] != 0 && offset[i] == oceanOffset;
+  }
+
+  public synchronized byte[] get(int z, int x, int y) throws IOException
+  {
+    // the PNG of tile x, y at zoom z, or null if it is not
+    // in the pack.
+    int i = index(z, x, y);
+    if (i < 0 || offset[i] == 0) return null;
+    byte b[] = new byte[length[i]];
+    f.seek(offset[i]);
+    f.readFully(b);
+    return b;
+  }  // get
+
+  public synchronized void put(int i, byte png[]) throws IOException
+  {
+    // stores the PNG of tile i.
+    long at = append(png);
+    setEntry(i, at, png.length);
+  }  // put
+
+  public synchronized boolean putOcean(int i) throws IOException
+  {
+    // points tile i at the shared ocean tile.  Returns
+    // false if there isn't one yet: see putOcean(i, png).
+    if (oceanOffset == 0) return false;
+    setEntry(i, oceanOffset, oceanLength);
+    return true;
+  }  // putOcean
+
+  public synchronized void putOcean(int i, byte png[]) throws IOException
+  {
+    // stores png as the shared ocean tile, unless another
+    // thread got there first, and points tile i at it.
+    if (oceanOffset == 0) {
+      long at = append(png);
+      oceanOffset = at;
+      oceanLength = png.length;
+      writeHeader();
+    }
+    setEntry(i, oceanOffset, oceanLength);
+  }  // putOcean
+
+  private long append(byte png[]) throws IOException
+  {
+    long at = end;
+    f.seek(at);
+    f.write(png);
+    end += png.length;
+    return at;
+  }  // append
+
+  private void setEntry(int i, long at, int len) throws IOException
+  {
+    // writes index entry i, after the PNG it points at.
+    offset[i] = at;
+    length[i] = len;
+    f.seek(HEADER + (long)i*ENTRY);
+    f.writeLong(at);
+    f.writeInt(len);
+    if (++unsynced >= 256) {
+      f.getChannel().force(false);
+      unsynced = 0;
+    }
+  }  // setEntry
+
+  public synchronized void close() throws IOException
+  {
+    // a pack being written loses anything past its last
+    // indexed tile.
+    if (writing) {
+      f.setLength(end);
+      f.getChannel().force(false);
+    }
+    f.close();
+  }  // close
+
+}
@@ -0,0 +1,173 @@
+import java.io.*;
+import java.nio.*;
+import java.util.zip.*;
+
+public class ZipRANGSData extends RANGSData {
+
+  /* RANGS files read straight out of a zip archive, as the
+  ** finest resolution is shipped (rangs0.zip), with no
+  ** extracting first.  The archive is memory mapped.  An
+  ** entry stored without compression is read in place,
+  ** from the mapping; a deflated one is inflated once, when
+  ** the archive is opened, and kept in memory.
+  **
+  ** A file not in the archive is looked for loose in the
+  ** same directory.  rangs0.zip holds no rim file; with no
+  ** gshhs(N).rim in the archive or next to it, the archive
+  ** is refused when opened, from its central directory,
+  ** before anything is inflated.
+  **
+  ** Only plain zip archives: no zip64, no encryption.
+  *************************************/
+
+  private static final int EOCD = 0x06054b50, CENTRAL = 0x02014b50, LOCAL = 0x04034b50;
+
+  private ByteBuffer zip, cel, rim;
+  private long inflated = 0;   // bytes inflated when opened
+
+  /******************
+  ** Constructors
+  ******************/
+
+  ZipRANGSData(int res, File zipFile) throws IOException {
+    super(res);
+    File dir = zipFile.getParentFile();
+    zip = MappedRANGSData.map(zipFile);
+    File loose = new File(dir, "gshhs(" + res + ").rim");
+    int rimAt = find("gshhs(" + res + ").rim");
+    if (rimAt < 0 && !loose.exists())
+      throw new IOException("gshhs(" + res + ").rim is not in " + zipFile + " or next to it");
+
+    ByteBuffer cat = entry("rangs(" + res + ").cat");
+    if (cat == null) cat = MappedRANGSData.map(new File(dir, "rangs(" + res + ").cat"));
+    readCat(cat);
+
+    cel = entry("rangs(" + res + ").cel");
+    if (cel == null) cel = MappedRANGSData.map(new File(dir, "rangs(" + res + ").cel"));
+
+    rim = (rimAt < 0) ? MappedRANGSData.map(loose) : read(rimAt);
+  }
+
+  /*******************
+  ** Methods
+  *******************/
+
+  private ByteBuffer entry(String name) throws IOException
+  {
+    // the bytes of entry name of the archive, or null if
+    // it isn't there.
+    int at = find(name);
+    return (at < 0) ? null : read(at);
+  }  // entry
+
+  private int find(String name) throws IOException
+  {
+    // where in the central directory entry name is, -1 if
+    // it isn't there.  Reads nothing else.
+    int end, stop, n, at;
+
+    // the end of central directory record is the last
+    // thing in the file, after a comment of up to 64k.
+    stop = Math.max(0, zip.capacity() - 22 - 65535);
+    for (end = zip.capacity() - 22; end >= stop && zip.getInt(end) != EOCD; end--);
+    if (end < stop) throw new IOException("not a zip archive");
+    n = zip.getShort(end + 10) & 0xffff;
+    at = zip.getInt(end + 16);
+
+    for (; n > 0; n--) {
+      if (zip.getInt(at) != CENTRAL) throw new IOException("zip central directory damaged");
+      int nameLen = zip.getShort(at + 28) & 0xffff;
+      int extraLen = zip.getShort(at + 30) & 0xffff;
+      int commentLen = zip.getShort(at + 32) & 0xffff;
+      if (name(at + 46, nameLen).equals(name)) return at;
+      at += 46 + nameLen + extraLen + commentLen;
+    }
+    return -1;
+  }  // find
+
+  private ByteBuffer read(int at) throws IOException
+  {
+    /* the bytes of the entry at at in the central
+    ** directory.  Stored entries are a slice of the
+    ** mapping, deflated ones are inflated into an array.
+    */
+    String name = name(at + 46, zip.getShort(at + 28) & 0xffff);
+    int method = zip.getShort(at + 10) & 0xffff;
+    int csize = zip.getInt(at + 20), size = zip.getInt(at + 24), local = zip.getInt(at + 42);
+
+    if (csize < 0 || size < 0 || local < 0) throw new IOException(name + ": zip64 is not supported");
+    if (zip.getInt(local) != LOCAL) throw new IOException(name + ": zip entry damaged");
+    int data = local + 30 + (zip.getShort(local + 26) & 0xffff) + (zip.getShort(local + 28) & 0xffff);
+    return read(name, method, data, csize, size);
+  }  // read
+
+  private String name(int at, int len)
+  {
+    byte b[] = new byte[len];
+    for (int i = 0; i < len; i++) b[i] = zip.get(at + i);
+    try {
+      return new String(b, "ISO-8859-1");
+    } catch (UnsupportedEncodingException e) {
+      return new String(b);
+    }
+  }  // name
+
+  private ByteBuffer read(String name, int method, int data, int csize, int size) throws IOException
+  {
+    // the bytes of an entry whose data start at data.
+    ByteBuffer b;
+
+    if (method == ZipEntry.STORED) {
+      b = zip.duplicate();
+      b.position(data);
+      b.limit(data + size);
+      return b.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+    if (method != ZipEntry.DEFLATED) throw new IOException(name + ": zip method " + method + " is not supported");
+
+    byte in[] = new byte[csize], out[] = new byte[size];
+    b = zip.duplicate();
+    b.position(data);
+    b.get(in);
+    Inflater inf = new Inflater(true);  // raw deflate, no zlib header
+    try {
+      inf.setInput(in);
+      int got = 0;
+      while (got < size && !inf.finished()) {
+        int k = inf.inflate(out, got, size - got);
+        if (k == 0 && (inf.needsInput() || inf.needsDictionary())) break;
+        got += k;
+      }
+      if (got != size) throw new IOException(name + ": zip entry is short");
+    } catch (DataFormatException e) {
+      throw new IOException(name + ": " + e.getMessage());
+    } finally {
+      inf.end();
+    }
+    inflated += size;
+    return ByteBuffer.wrap(out).order(ByteOrder.LITTLE_ENDIAN);
+  }  // read
+
+  public long inflated() {
+    // bytes inflated into memory when the archive was opened.
+    return inflated;
+  }
+
+  public int celByte(long pos) {
+    return cel.get((int)pos) & 0xff;
+  }
+
+  public int celInt(long pos) {
+    return cel.getInt((int)pos);
+  }
+
+  public int rimInt(long pos) {
+    return rim.getInt((int)pos);
+  }
+
+  public void close() {
+    // mappings are released when the buffers are collected.
+    zip = cel = rim = null;
+  }
+
+}
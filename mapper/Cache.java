@@ -2,32 +2,54 @@ import java.util.*;
 
 public class Cache {
 
-  /* A simple LRU Cache.
-  ** As with any class that can be stored in 
-  ** a Hashtable, a class that uses Cache must
-  ** implement the hashCode method and the 
-  ** equals method.
+  /* A least recently used cache on long keys.
+  ** Capacity is counted in bytes: every put says how big
+  ** its value is, and the least recently used values are
+  ** dropped until the total fits again.
+  **
+  ** Keys live in an open addressing hash table (linear
+  ** probing) pointing at entries; entries are chained in
+  ** a doubly linked list in access order, most recent
+  ** first.  Nothing is boxed and nothing is allocated per
+  ** get or put once the tables have grown.
+  **
+  ** Not synchronized: callers sharing a Cache between
+  ** threads must lock it themselves.
   *************************************/
 
-  private Hashtable ht;
-  private LinkedList list;
-  private long maxSize;
+  private long maxBytes, bytes = 0;
+  private long hits = 0, misses = 0, evictions = 0;
+
+  // hash table: entry index + 1, 0 for an empty slot.
+  private int table[];
+  private int mask;
+
+  // entries
+  private long key[];
+  private Object value[];
+  private long size[];
+  private int prev[], next[];
+  private int count = 0, used = 0, free = -1;
+  private int head = -1, tail = -1;
 
     /******************
     ** Constructors
     ******************/
 
   Cache() {
-    // build a cache of max size 64.
-    list = new LinkedList();
-    ht = new Hashtable(64);
-    maxSize = 64;
+    // build a cache of 16 megabytes.
+    this(16L << 20);
   }
 
-  Cache(int sz) {
-    list = new LinkedList();
-    ht = new Hashtable(sz);
-    maxSize = sz;
+  Cache(long maxBytes) {
+    this.maxBytes = maxBytes;
+    table = new int[64];
+    mask = table.length - 1;
+    key = new long[32];
+    value = new Object[32];
+    size = new long[32];
+    prev = new int[32];
+    next = new int[32];
   }
 
   /*******************
@@ -35,31 +57,184 @@ public class Cache {
   *******************/
 
   public long maxSize() {
-    return maxSize;
+    // capacity in bytes.
+    return maxBytes;
   }
 
   public long size() {
-    return list.size();
+    // number of values held.
+    return count;
+  }
+
+  public long bytes() {
+    // total size of the values held.
+    return bytes;
+  }
+
+  public long hits() {
+    return hits;
+  }
+
+  public long misses() {
+    return misses;
+  }
+
+  public long evictions() {
+    return evictions;
   }
 
   public void clear() {
-    list.clear();
-    ht.clear();
+    Arrays.fill(table, 0);
+    Arrays.fill(value, 0, used, null);
+    count = used = 0;
+    free = head = tail = -1;
+    bytes = 0;
   }
 
-  public Object put(Object key, Object value) {
-    if (list.size() == maxSize) {
-      // at capacity.  Remove first item.
-      ht.remove(list.removeFirst());
+  public Object get(long k) {
+    // returns the value for k, or null, and marks it
+    // as most recently used.
+    int e = find(k);
+    if (e < 0) {
+      misses++;
+      return null;
     }
-    list.add(key);
-    return ht.put(key, value);
+    hits++;
+    moveToHead(e);
+    return value[e];
   }
 
-  public Object get(Object key) {
-    return ht.get(key);
+  public Object put(long k, Object v, long sz) {
+    // stores v, sz bytes big, under k.  Returns the value
+    // it replaced, if any.  Values bigger than the whole
+    // cache are not kept.
+    Object old = null;
+    int e = find(k);
+
+    if (e >= 0) {
+      old = value[e];
+      remove(e);
+    }
+    if (sz > maxBytes) return old;
+
+    if (2*(count + 1) > table.length) rehash(2*table.length);
+    e = newEntry();
+    key[e] = k;
+    value[e] = v;
+    size[e] = sz;
+    insert(e);
+    bytes += sz;
+    count++;
+    linkHead(e);
+
+    while (bytes > maxBytes) {
+      evictions++;
+      remove(tail);
+    }
+    return old;
+  }
+
+  private static int hash(long k) {
+    // spreads the bits of k (murmur3 finalizer).
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return (int)k;
   }
-      
-}
 
+  private int find(long k) {
+    // entry holding k, or -1.
+    int i = hash(k) & mask, e;
+    while ((e = table[i]) != 0) {
+      if (key[e - 1] == k) return e - 1;
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
 
+  private void insert(int e) {
+    // puts entry e in the hash table.
+    int i = hash(key[e]) & mask;
+    while (table[i] != 0) i = (i + 1) & mask;
+    table[i] = e + 1;
+  }
+
+  private void remove(int e) {
+    // takes entry e out of the table, the list and the totals.
+    int i = hash(key[e]) & mask, j, h;
+
+    while (table[i] != e + 1) i = (i + 1) & mask;
+    // close the gap by shifting back entries that would
+    // no longer be found across it.
+    j = i;
+    while (true) {
+      table[i] = 0;
+      do {
+        j = (j + 1) & mask;
+        if (table[j] == 0) {
+          unlink(e);
+          return;
+        }
+        h = hash(key[table[j] - 1]) & mask;
+      } while (i <= j ? (i < h && h <= j) : (i < h || h <= j));
+      table[i] = table[j];
+      i = j;
+    }
+  }
+
+  private void unlink(int e) {
+    if (prev[e] >= 0) next[prev[e]] = next[e];
+    else head = next[e];
+    if (next[e] >= 0) prev[next[e]] = prev[e];
+    else tail = prev[e];
+    bytes -= size[e];
+    count--;
+    value[e] = null;
+    next[e] = free;
+    free = e;
+  }
+
+  private void linkHead(int e) {
+    prev[e] = -1;
+    next[e] = head;
+    if (head >= 0) prev[head] = e;
+    head = e;
+    if (tail < 0) tail = e;
+  }
+
+  private void moveToHead(int e) {
+    if (e == head) return;
+    next[prev[e]] = next[e];
+    if (next[e] >= 0) prev[next[e]] = prev[e];
+    else tail = prev[e];
+    linkHead(e);
+  }
+
+  private int newEntry() {
+    // takes an entry off the free list, growing if need be.
+    int e;
+    if (free >= 0) {
+      e = free;
+      free = next[e];
+      return e;
+    }
+    if (used == key.length) {
+      int n = 2*used;
+      key = Arrays.copyOf(key, n);
+      value = Arrays.copyOf(value, n);
+      size = Arrays.copyOf(size, n);
+      prev = Arrays.copyOf(prev, n);
+      next = Arrays.copyOf(next, n);
+    }
+    return used++;
+  }
+
+  private void rehash(int n) {
+    table = new int[n];
+    mask = n - 1;
+    for (int e = head; e >= 0; e = next[e]) insert(e);
+  }
+
+}
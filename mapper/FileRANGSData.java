@@ -0,0 +1,78 @@
+import java.io.*;
+import java.nio.*;
+
+public class FileRANGSData extends RANGSData {
+
+  /* The original RandomAccessFile reader: a seek and a
+  ** read per value.  Kept for comparison with
+  ** MappedRANGSData; reads() counts the calls, each of
+  ** which is a system call.  Seeks to where the file
+  ** pointer already is are skipped.  Cells are decoded
+  ** one at a time, as the file pointers are shared.
+  *************************************/
+
+  private RandomAccessFile hCEL, hRIM;
+  private long celAt = 0, rimAt = 0; // file pointers
+  private byte intBytes[] = new byte[4];
+  private long reads = 0;
+
+  FileRANGSData(int res, File cel, File cat, File rim) throws IOException {
+    super(res);
+    hCEL = new RandomAccessFile(cel, "r");
+    RandomAccessFile hCAT = new RandomAccessFile(cat, "r");
+    try {
+      byte b[] = new byte[(int)hCAT.length()];
+      hCAT.readFully(b);
+      reads++;
+      readCat(ByteBuffer.wrap(b));
+    } finally {
+      hCAT.close();
+    }
+    hRIM = new RandomAccessFile(rim, "r");
+  }
+
+  public synchronized RANGSCell decodeCell(int ix, int iy) throws IOException {
+    // the file pointers are shared, so one cell at a time.
+    return super.decodeCell(ix, iy);
+  }
+
+  public long reads() {
+    return reads;
+  }
+
+  public int celByte(long pos) throws IOException {
+    if (pos != celAt) seek(hCEL, pos);
+    celAt = pos + 1;
+    reads++;
+    return hCEL.readByte() & 0xff;
+  }
+
+  public int celInt(long pos) throws IOException {
+    if (pos != celAt) seek(hCEL, pos);
+    celAt = pos + 4;
+    return readInt(hCEL);
+  }
+
+  public int rimInt(long pos) throws IOException {
+    if (pos != rimAt) seek(hRIM, pos);
+    rimAt = pos + 4;
+    return readInt(hRIM);
+  }
+
+  private void seek(RandomAccessFile f, long pos) throws IOException {
+    f.seek(pos);
+    reads++;
+  }
+
+  private int readInt(RandomAccessFile f) throws IOException {
+    f.readFully(intBytes);
+    reads++;
+    return (UnsignedByte.toInt(intBytes[3])*0x1000000 + UnsignedByte.toInt(intBytes[2])*0x10000 + UnsignedByte.toInt(intBytes[1])*0x100 + UnsignedByte.toInt(intBytes[0]));
+  }
+
+  public void close() throws IOException {
+    hCEL.close();
+    hRIM.close();
+  }
+
+}
@@ -0,0 +1,201 @@
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+
+public class HeadlessMap {
+
+  /* Draws RANGS maps into images with no window, for batch
+  ** jobs and servers.  The map is drawn exactly as the
+  ** rangs panel draws it: same cells, same viewport, same
+  ** colors and level of detail.
+  **
+  ** One HeadlessMap may be used by many threads at once:
+  ** each render has its own RenderContext and image, and
+  ** the cache of decoded cells is locked on use.  Settings
+  ** (detail, colors, background) should be made before the
+  ** first render.
+  *************************************/
+
+  private RANGSStore store;  // may be shared with other maps
+  private RANGSData data;
+  private int flags;
+  private int tolerance = 0;
+  private double lodPixels = 1;
+  private boolean uniformFill = true;
+  private Color mapColor[] = new Color[8];
+  private Color background = Color.white;
+
+  /******************
+  ** Constructors
+  ******************/
+
+  HeadlessMap(RANGSData d) throws IOException {
+    // a map with a 32 megabyte cell cache.
+    this(d, 32L << 20);
+  }
+
+  HeadlessMap(RANGSData d, long cacheBytes) throws IOException {
+    this(new RANGSStore(d, cacheBytes), d.resolution());
+  }
+
+  HeadlessMap(RANGSStore s, int res) throws IOException {
+    // a map of resolution res of s, keeping its cells in
+    // the cache of s, which maps of other resolutions may
+    // share.
+    store = s;
+    data = s.open(res);
+    setDetail(3, true);
+    mapColor[0] = Color.blue;   // ocean
+    mapColor[1] = Color.green;  // land
+    mapColor[2] = Color.cyan;   // lakes
+    mapColor[3] = Color.green;  // islands in lakes
+    mapColor[4] = Color.cyan;   // ponds on islands
+    mapColor[5] = Color.black;  // outlines
+    mapColor[6] = Color.yellow; // error
+    mapColor[7] = Color.white;  // unknown
+  }
+
+  /*******************
+  ** Methods
+  *******************/
+
+  public RANGSData data() {
+    return data;
+  }
+
+  public static int detailFlags(int detail, boolean fill)
+  {
+    /* the level of detail flags rangs.setDetail gives.
+    ** detail 0: coastlines only, 1: add lakes, 2: add
+    ** islands in lakes, 3: add ponds on islands.  fill
+    ** false draws outlines only.
+    */
+    int k, f = 0;
+
+    for (k = 0; k <= detail + 1; k++) f |= 1 << (8 + k);
+    if (!fill) f = (f >> 8) & 30;
+    return f;
+  }  // detailFlags
+
+  public void setDetail(int detail, boolean fill) {
+    flags = detailFlags(detail, fill);
+  }
+
+  public void setColor(int i, Color c) {
+    // see rangs.getColor for what i means.
+    mapColor[i] = c;
+  }
+
+  public Color getColor(int i) {
+    return mapColor[i];
+  }
+
+  public void setTolerance(int px) {
+    // see rangs.setTolerance.
+    tolerance = px;
+  }
+
+  public void setLodPixels(double px) {
+    // see rangs.setLodPixels.
+    lodPixels = px;
+  }
+
+  public void setUniformFill(boolean on) {
+    // see RenderContext.setUniformFill.
+    uniformFill = on;
+  }
+
+  public void setBackground(Color c) {
+    background = c;
+  }
+
+  public BufferedImage render(float lon1, float lat1, float lon2, float lat2,
+                              int width, int height) throws IOException
+  {
+    /* draws the map with top left corner lon1/lat1 and
+    ** bottom right corner lon2/lat2 into a new image.
+    */
+    BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics g = img.getGraphics();
+    try {
+      g.setColor(background);
+      g.fillRect(0, 0, width, height);
+      draw(g, lon1, lat1, lon2, lat2, width, height);
+    } finally {
+      g.dispose();
+    }
+    return img;
+  }  // render
+
+  public void draw(Graphics g, float lon1, float lat1, float lon2, float lat2,
+                   int width, int height) throws IOException
+  {
+    /* draws the map onto g, which is width by height
+    ** pixels.  The corners are taken as the rangs panel
+    ** takes them: lon1 east of lon2 wraps round the date
+    ** line, and the map takes in an extra degree east of
+    ** lon2 and north of lat1.
+    */
+    if (lon1 > lon2) lon1 -= 360;
+    if (Math.abs(lat1-lat2) < 0.001) lat2 = lat1 - (float)0.001;
+    if (Math.abs(lon1-lon2) < 0.001) lon2 = lon1 + (float)0.001;
+    drawBox(g, lon1, lat1 + 1, lon2 + 1, lat2, width, height);
+  }  // draw
+
+  public void drawBox(Graphics g, double west, double north, double east, double south,
+                      int width, int height) throws IOException
+  {
+    /* draws exactly the box west..east, north..south onto
+    ** g, which is width by height pixels.  west may be
+    ** below 0 or east above 360 to cross the date line.
+    */
+    int i, j;
+    Viewport view = new Viewport(west, north, east, south, 0, 0, width, height);
+    RenderContext rc = new RenderContext(view, flags, mapColor);
+    RANGSLod lod = (lodPixels > 0) ? store.lod(data.resolution()) : null;
+    int level = (lod == null) ? -1 : lod.levelFor(Math.abs(view.pixelsPerDegree()), lodPixels);
+    rc.setTolerance(tolerance);
+    rc.setUniformFill(uniformFill);
+
+    // a cell at row i, column j covers i..i+1, j..j+1.
+    for (i = (int)Math.ceil(north) - 1; i >= (int)Math.floor(south); i--) {
+      if (i > 89 || i < -90) continue; // no cells beyond the poles
+      for (j = (int)Math.floor(west); j < (int)Math.ceil(east); j++) {
+        int ix = ((j % 360) + 360) % 360, cls = data.cellClass(ix, i);
+        if (cls == RANGSData.EMPTY) continue;
+        if (cls >= 0 && rc.fillsUniform()) rc.fillCell(j, i, cls, g);
+        else rc.drawCell(store.getCell(data, level, ix, i), j - ix, g);
+      }
+    }
+    rc.flush(g);
+  }  // drawBox
+
+  public boolean allOcean(double west, double north, double east, double south) throws IOException
+  {
+    /* true if every cell drawBox would draw for this box
+    ** is open ocean: one square polygon and nothing in it.
+    ** The whole box then comes out in the ocean color.
+    */
+    int i, j;
+
+    for (i = (int)Math.ceil(north) - 1; i >= (int)Math.floor(south); i--) {
+      if (i > 89 || i < -90) continue;
+      for (j = (int)Math.floor(west); j < (int)Math.ceil(east); j++)
+        if (data.cellClass(((j % 360) + 360) % 360, i) != 0) return false;
+    }
+    return true;
+  }  // allOcean
+
+  public RANGSCell getCell(int ix, int iy) throws IOException
+  {
+    // returns the decoded cell, from the cache if it's there.
+    return store.getCell(data, ix, iy);
+  }  // getCell
+
+  public String cacheStats()
+  {
+    // hit rate and memory of the cell cache.
+    return store.cacheStats();
+  }  // cacheStats
+
+}
@@ -0,0 +1,221 @@
+import java.io.*;
+import java.nio.*;
+
+public class PackedRANGSData extends RANGSData {
+
+  /* One resolution converted by rangsPack into a single
+  ** file, rangs(N).pak, where each cell is one contiguous
+  ** record: the whole polygon tree, rim runs copied in, so
+  ** a cell is decoded from one read of one file.
+  **
+  **   int    magic 'RPAK', version, resolution
+  **   long   length of the cel file, of the rim file it was
+  **          made from
+  **   int    per cell (as the cat file), then one more: the
+  **          offset of its record; a record runs up to the
+  **          next one's offset
+  **   byte   per cell, its class (RANGSData.cellClass), so
+  **          opening a pack decodes nothing
+  **
+  ** A record, all numbers varints (7 bits a byte, low
+  ** first, high bit set on all but the last):
+  **   number of polygons, then per polygon
+  **     level, polyID (zigzag), number of pieces, then per
+  **     piece the piece byte (one byte), the number of
+  **     points if it is a rim piece (7) and its points.
+  ** A point is x and y less the point before (zigzag),
+  ** the first less the cell's south west corner, in
+  ** micro-degrees.  Numbers outside the index are
+  ** little-endian like the RANGS files.
+  **
+  ** The file is memory mapped, as MappedRANGSData maps the
+  ** RANGS files, and a record is decoded front to back out
+  ** of one run of bytes.  Absolute gets never move the
+  ** buffer position, so several threads can decode at once.
+  *************************************/
+
+  public static final int MAGIC = 0x4b415052, VERSION = 2;
+  private static final int HEADER = 3*4 + 2*8;
+  private static final int CLASSES = HEADER + 4*(CELLS + 1);  // where the cell classes are
+
+  private ByteBuffer pak;
+  private int offset[] = new int[CELLS + 1];
+
+  /******************
+  ** Constructors
+  ******************/
+
+  PackedRANGSData(int res, File pak, File cel, File rim) throws IOException {
+    /* opens pak.  If the cel and rim files it was made
+    ** from are there, they must not have changed since.
+    */
+    super(res);
+    ByteBuffer b = MappedRANGSData.map(pak);
+    if (b.capacity() < CLASSES + CELLS || b.getInt(0) != MAGIC)
+      throw new IOException(pak + " is not a RANGS pack");
+    if (b.getInt(4) != VERSION) throw new IOException(pak + ": pack version not known");
+    if (b.getInt(8) != res) throw new IOException(pak + " is for resolution " + b.getInt(8));
+    if ((cel.exists() && b.getLong(12) != cel.length()) || (rim.exists() && b.getLong(20) != rim.length()))
+      throw new IOException(pak + " was made from other RANGS files");
+    b.position(HEADER);
+    b.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(offset);
+    b.position(0);
+    for (int i = 0; i < CELLS; i++) cat[i] = offset[i] + 1;
+    this.pak = b;
+  }
+
+  /*******************
+  ** Methods
+  *******************/
+
+  public RANGSCell decodeCell(int ix, int iy)
+  {
+    // decodes the record of the cell at longitude ix
+    // (0..359) and latitude iy (89..-90).
+    int i = (89-iy)*360+ix;
+    byte r[] = new byte[offset[i+1] - offset[i]];
+    RANGSCell c = new RANGSCell();
+    int at[] = {0};   // where in r
+    int nPolys, nPieces, piece, n, p, k, v;
+    int x = ix*1000000, y = iy*1000000;
+
+    ByteBuffer b = pak.duplicate();  // its own position, for this thread
+    b.position(offset[i]);
+    b.get(r);
+    nPolys = varint(r, at);
+    for (p = 0; p < nPolys; p++) {
+      int lvl = varint(r, at);
+      c.addPolygon(lvl, unzigzag(varint(r, at)));
+      nPieces = varint(r, at);
+      for (k = 0; k < nPieces; k++) {
+        piece = r[at[0]++] & 0xff;
+        c.addPiece(piece);
+        n = ((piece & 7) == 7) ? varint(r, at) : (piece & 7);
+        for (v = 0; v < n; v++) {
+          x += unzigzag(varint(r, at));
+          y += unzigzag(varint(r, at));
+          c.addVertex(x, y);
+        }
+      }
+    }
+    c.trim();
+    return c;
+  }  // decodeCell
+
+  protected void classify(byte c[]) {
+    // worked out when the pack was made: copy them out.
+    ByteBuffer b = pak.duplicate();
+    b.position(CLASSES);
+    b.get(c);
+  }
+
+  protected int classify(int ix, int iy) {
+    return pak.get(CLASSES + (89-iy)*360+ix);
+  }
+
+  static int varint(byte r[], int at[])
+  {
+    int b, n = 0, shift = 0;
+    do {
+      b = r[at[0]++];
+      n |= (b & 0x7f) << shift;
+      shift += 7;
+    } while (b < 0);
+    return n;
+  }  // varint
+
+  static int unzigzag(int n) {
+    return (n >>> 1) ^ -(n & 1);
+  }
+
+  // cells come packed: there is no cel or rim file to read.
+
+  public int celByte(long pos) throws IOException {
+    throw new IOException("a RANGS pack has no cel file");
+  }
+
+  public int celInt(long pos) throws IOException {
+    throw new IOException("a RANGS pack has no cel file");
+  }
+
+  public int rimInt(long pos) throws IOException {
+    throw new IOException("a RANGS pack has no rim file");
+  }
+
+  public void close() {
+    // the mapping is released when the buffer is collected.
+    pak = null;
+  }
+
+  /*******************
+  ** Making the file
+  *******************/
+
+  public static void write(RANGSData d, File pak, File cel, File rim) throws IOException
+  {
+    /* converts every cell of d, which was opened from cel
+    ** and rim, into pak.
+    */
+    ByteArrayOutputStream records = new ByteArrayOutputStream(1 << 22);
+    ByteBuffer h = ByteBuffer.allocate(CLASSES + CELLS).order(ByteOrder.LITTLE_ENDIAN);
+    File tmp = new File(pak.getPath() + ".tmp");
+    int start = h.capacity(), i;
+
+    h.putInt(MAGIC).putInt(VERSION).putInt(d.resolution());
+    h.putLong(cel.length()).putLong(rim.length());
+    for (i = 0; i < CELLS; i++) {
+      RANGSCell c = d.decodeCell(i % 360, 89 - i/360);
+      h.putInt(start + records.size());
+      h.put(CLASSES + i, (byte)classify(c, i % 360, 89 - i/360));
+      record(c, i % 360, 89 - i/360, records);
+    }
+    h.putInt(start + records.size());
+
+    OutputStream o = new BufferedOutputStream(new FileOutputStream(tmp));
+    try {
+      o.write(h.array());
+      records.writeTo(o);
+    } finally {
+      o.close();
+    }
+    if (pak.exists() && !pak.delete()) throw new IOException("can't replace " + pak);
+    if (!tmp.renameTo(pak)) throw new IOException("can't rename " + tmp + " to " + pak);
+  }  // write
+
+  private static void record(RANGSCell c, int ix, int iy, ByteArrayOutputStream o)
+  {
+    // appends the record of c, the cell at ix, iy.
+    int x = ix*1000000, y = iy*1000000, p, k, v;
+
+    putVarint(o, c.polygons());
+    for (p = 0; p < c.polygons(); p++) {
+      putVarint(o, c.level(p));
+      putVarint(o, zigzag(c.polyID(p)));
+      putVarint(o, c.endPiece(p) - c.firstPiece(p));
+      for (k = c.firstPiece(p); k < c.endPiece(p); k++) {
+        o.write(c.piece(k));
+        if (c.isRim(k)) putVarint(o, c.endVertex(k) - c.firstVertex(k));
+        for (v = c.firstVertex(k); v < c.endVertex(k); v++) {
+          putVarint(o, zigzag(c.x(v) - x));
+          putVarint(o, zigzag(c.y(v) - y));
+          x = c.x(v);
+          y = c.y(v);
+        }
+      }
+    }
+  }  // record
+
+  static void putVarint(ByteArrayOutputStream o, int n)
+  {
+    while ((n & ~0x7f) != 0) {
+      o.write((n & 0x7f) | 0x80);
+      n >>>= 7;
+    }
+    o.write(n);
+  }  // putVarint
+
+  static int zigzag(int n) {
+    return (n << 1) ^ (n >> 31);
+  }
+
+}
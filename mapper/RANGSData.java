@@ -0,0 +1,228 @@
+import java.io.*;
+import java.nio.*;
+
+public abstract class RANGSData {
+
+  /* Access to the three files that make up one RANGS
+  ** resolution: rangs(N).cel (cell polygons), rangs(N).cat
+  ** (cell addresses) and gshhs(N).rim (long rim segments).
+  ** All positions are byte offsets into the file, all ints
+  ** are stored little-endian, as in Rainer Feistel's files.
+  ** The cat file is small (360x180 cells x 4 bytes) and is
+  ** decoded whole when the files are opened.
+  *************************************/
+
+  public static final int CELLS = 360*180;
+  public static final int RESOLUTIONS = 5;
+  // cellClass of a cell with no polygons, and of one that
+  // is more than a plain square.
+  public static final int EMPTY = -2, MIXED = -1;
+
+  // about how far apart GSHHS points are at each
+  // resolution, in km: full, high, intermediate, low, crude.
+  private static final double SPACING[] = {0.04, 0.2, 1, 5, 25};
+
+  protected int resolution;
+  protected int cat[] = new int[CELLS]; // cel file address of each cell, 1 based
+  private volatile byte cls[];   // cellClass of each cell, made when first asked for
+  private ThreadLocal<RANGSDecoder> decoders = new ThreadLocal<RANGSDecoder>();  // one per thread
+
+  /******************
+  ** Constructors
+  ******************/
+
+  RANGSData(int res) {
+    resolution = res;
+  }
+
+  public static RANGSData open(File dir, int res) throws IOException {
+    /* opens resolution res found in directory dir: its
+    ** rangsPack file if there is a good one, else the
+    ** RANGS files memory mapped, read out of rangsN.zip if
+    ** the cel file is only there (see zipFile).
+    */
+    if (new File(dir, "rangs(" + res + ").pak").exists()) {
+      try {
+        return openPacked(dir, res);
+      } catch (IOException e) {
+        // out of date or damaged: use the RANGS files.
+      }
+    }
+    File zip = zipFile(dir, res);
+    if (!new File(dir, "rangs(" + res + ").cel").exists() && zip != null) return openZip(zip, res);
+    return open(dir, res, true);
+  }
+
+  public static File zipFile(File dir, int res) {
+    // the archive resolution res was shipped in, in dir
+    // or, as it is shipped, in dir/rangs; null if neither.
+    File zip = new File(dir, "rangs" + res + ".zip");
+    if (zip.exists()) return zip;
+    zip = new File(new File(dir, "rangs"), "rangs" + res + ".zip");
+    return zip.exists() ? zip : null;
+  }
+
+  public static RANGSData openZip(File zip, int res) throws IOException {
+    /* opens resolution res from the zip archive it was
+    ** shipped in (see ZipRANGSData).  All three files must
+    ** be in it or next to it.
+    */
+    return new ZipRANGSData(res, zip);
+  }
+
+  public static RANGSData openPacked(File dir, int res) throws IOException {
+    // opens the rangsPack file of resolution res in dir.
+    return new PackedRANGSData(res, new File(dir, "rangs(" + res + ").pak"),
+                               new File(dir, "rangs(" + res + ").cel"), new File(dir, "gshhs(" + res + ").rim"));
+  }
+
+  public static RANGSData open(File dir, int res, boolean mapped) throws IOException {
+    // opens resolution res found in directory dir.
+    // mapped == false gives the old RandomAccessFile reader.
+    File cel = new File(dir, "rangs(" + res + ").cel");
+    File cat = new File(dir, "rangs(" + res + ").cat");
+    File rim = new File(dir, "gshhs(" + res + ").rim");
+
+    if (mapped) return new MappedRANGSData(res, cel, cat, rim);
+    return new FileRANGSData(res, cel, cat, rim);
+  }
+
+  /*******************
+  ** Methods
+  *******************/
+
+  public static double spacing(int res)
+  {
+    // about how many degrees apart points are at resolution res.
+    return SPACING[res]/111.2;
+  }  // spacing
+
+  public static int resolutionFor(double pixelsPerDegree, double maxPixels, boolean have[])
+  {
+    /* the coarsest resolution whose points land no more
+    ** than maxPixels apart at pixelsPerDegree, among those
+    ** have[] says are there.  If the one wanted is not
+    ** there, the nearest finer one, else the nearest
+    ** coarser one.  -1 if there are none.
+    */
+    int want, r;
+
+    for (want = RESOLUTIONS - 1; want > 0; want--)
+      if (spacing(want)*pixelsPerDegree <= maxPixels) break;
+    for (r = want; r >= 0; r--) if (have[r]) return r;
+    for (r = want + 1; r < RESOLUTIONS; r++) if (have[r]) return r;
+    return -1;
+  }  // resolutionFor
+
+  public int resolution() {
+    return resolution;
+  }
+
+  protected void readCat(ByteBuffer b) throws IOException {
+    // decodes the cat file held in b.
+    if (b.remaining() != 4*CELLS)
+      throw new IOException("cat file is " + b.remaining() + " bytes, expected " + 4*CELLS);
+    b.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(cat);
+  }
+
+  public final int cellAddress(int ix, int iy) {
+    // position in the cel file of the cell at longitude
+    // ix (0..359) and latitude iy (89..-90).
+    return cat[(89-iy)*360+ix] - 1;
+  }
+
+  public int cellClass(int ix, int iy) throws IOException
+  {
+    /* EMPTY if the cell at longitude ix (0..359) and
+    ** latitude iy (89..-90) has no polygons, its flg if it
+    ** is just the one square all of one kind (0 ocean, 1
+    ** land, 2 lake...), else MIXED.  Such cells can be
+    ** drawn without decoding them.
+    */
+    if (cls == null) classify();
+    return cls[(89-iy)*360+ix];
+  }  // cellClass
+
+  public synchronized void classify() throws IOException
+  {
+    // works out the class of every cell, if not done yet.
+    if (cls != null) return;
+    byte c[] = new byte[CELLS];
+    classify(c);
+    cls = c;
+  }  // classify
+
+  protected void classify(byte c[]) throws IOException
+  {
+    // fills c with the class of each cell, in cat order.
+    for (int i = 0; i < CELLS; i++) c[i] = (byte)classify(i % 360, 89 - i/360);
+  }  // classify
+
+  protected int classify(int ix, int iy) throws IOException
+  {
+    // the class of one cell, from the cel file alone:
+    // polygon headers, piece bytes and the points of short
+    // pieces.
+    long pos = cellAddress(ix, iy);
+    int piece, nPoints, flg = -1, k, x, y;
+
+    if (celByte(pos) == 0) return EMPTY;
+    pos += 5;  // opcode, polyID
+    while ((nPoints = (piece = celByte(pos++)) & 7) != 0) {
+      if (nPoints == 7) return MIXED;   // long coast in the rim file
+      if (flg >= 0 && piece >> 4 != flg) return MIXED;
+      flg = piece >> 4;
+      for (k = 0; k < nPoints; k++, pos += 8) {
+        x = celInt(pos) - ix*1000000;
+        y = celInt(pos + 4) - iy*1000000;
+        if ((x != 0 && x != 1000000) || (y != 0 && y != 1000000)) return MIXED;
+      }
+    }
+    if (celByte(pos) != 0) return MIXED;  // polygons inside it
+    return flg < 0 ? EMPTY : flg;
+  }  // classify
+
+  static int classify(RANGSCell c, int ix, int iy)
+  {
+    // the class of decoded cell c, at ix, iy.
+    int k, v, x, y, flg;
+
+    if (c.polygons() == 0 || c.pieces() == 0) return EMPTY;
+    if (c.polygons() > 1) return MIXED;
+    flg = c.flg(0);
+    for (k = 0; k < c.pieces(); k++)
+      if (c.isRim(k) || c.flg(k) != flg) return MIXED;
+    for (v = 0; v < c.vertices(); v++) {
+      x = c.x(v) - ix*1000000;
+      y = c.y(v) - iy*1000000;
+      if ((x != 0 && x != 1000000) || (y != 0 && y != 1000000)) return MIXED;
+    }
+    return flg;
+  }  // classify
+
+  public RANGSCell decodeCell(int ix, int iy) throws IOException {
+    // reads all polygons of the cell at longitude ix
+    // (0..359) and latitude iy (89..-90).
+    RANGSDecoder d = decoders.get();
+    if (d == null) decoders.set(d = new RANGSDecoder(this));
+    d.decode(ix, iy);
+    return d.cell();
+  }  // decodeCell
+
+  public long reads() {
+    // number of read/seek calls made on the files so far.
+    return 0;
+  }
+
+  // unsigned byte at pos in the cel file
+  public abstract int celByte(long pos) throws IOException;
+
+  // little-endian int at pos in the cel file
+  public abstract int celInt(long pos) throws IOException;
+
+  // little-endian int at pos in the rim file
+  public abstract int rimInt(long pos) throws IOException;
+
+  public abstract void close() throws IOException;
+
+}
@@ -0,0 +1,222 @@
+import java.io.*;
+
+public class RANGSDecoder {
+
+  /* Turns the bytes of a cell into a flat stream of events
+  ** in an int array, with no recursion and nothing to do
+  ** with drawing:
+  **
+  **   BEGIN level polyID end   a polygon starts; end is the
+  **                            index just past its END, and
+  **                            the ENDs of all polygons nested
+  **                            in it, so a subtree can be
+  **                            skipped
+  **   RUN piece n x1 y1 .. xn yn  n vertices, in micro-degrees;
+  **                            piece is the piece byte of the
+  **                            cel file (level of detail flag
+  **                            piece>>4, rim run if piece&7 is 7)
+  **   END                      the polygon begun last ends
+  **
+  ** Polygons come in the order they are drawn, each one
+  ** followed by those nested in it, before its END.
+  **
+  ** In the cel file a polygon is its polyID and its pieces,
+  ** then for each polygon nested in it a non zero byte and
+  ** that polygon, then a zero byte.  The nesting is walked
+  ** with a stack of the BEGINs still open, so a cell nested
+  ** however deep costs no Java stack.
+  **
+  ** One decoder is for one thread; it is cheap, and keeps
+  ** its buffers from cell to cell.  A pack (PackedRANGSData)
+  ** has no cel bytes: its cells are decoded whole and then
+  ** turned into events.
+  *************************************/
+
+  public static final int BEGIN = 1, RUN = 2, END = 3;
+
+  private RANGSData data;
+  private int ev[] = new int[256];
+  private int length = 0;
+  private int open[] = new int[8];  // index of each BEGIN not yet ended
+  private long cells = 0, vertices = 0;
+
+  /******************
+  ** Constructors
+  ******************/
+
+  RANGSDecoder(RANGSData d) {
+    data = d;
+  }
+
+  /*******************
+  ** Methods
+  *******************/
+
+  public int decode(int ix, int iy) throws IOException
+  {
+    /* decodes the cell at longitude ix (0..359) and
+    ** latitude iy (89..-90) into events(), and returns how
+    ** many ints of it there are.
+    */
+    if (data instanceof PackedRANGSData) return decode(data.decodeCell(ix, iy));
+
+    long pos = data.cellAddress(ix, iy), rimPos;
+    int depth = 0, piece, n, k;
+
+    length = 0;
+    cells++;
+    if (data.celByte(pos++) == 0) return 0;
+    while (true) {
+      // a polygon at pos, one level below the open ones.
+      if (depth == open.length) open = grow(open, 2*depth);
+      open[depth] = length;
+      put(BEGIN, depth, data.celInt(pos), 0);
+      pos += 4;
+      while ((n = (piece = data.celByte(pos++)) & 7) != 0) {
+        if (n == 7) {
+          // long segment stored in the rim file.
+          rimPos = data.celInt(pos) - 1;
+          n = data.celInt(pos + 4);
+          pos += 8;
+          run(piece, n);
+          for (k = 0; k < n; k++, rimPos += 8) {
+            ev[length++] = data.rimInt(rimPos);
+            ev[length++] = data.rimInt(rimPos + 4);
+          }
+        }
+        else {
+          run(piece, n);
+          for (k = 0; k < n; k++, pos += 8) {
+            ev[length++] = data.celInt(pos);
+            ev[length++] = data.celInt(pos + 4);
+          }
+        }
+        vertices += n;
+      }
+      depth++;
+
+      // a zero byte ends the open polygon, a non zero one
+      // starts another inside it.
+      while (depth > 0 && data.celByte(pos++) == 0) end(open[--depth]);
+      if (depth == 0) return length;
+    }
+  }  // decode
+
+  public int decode(RANGSCell c)
+  {
+    // turns an already decoded cell into events(), and
+    // returns how many ints of it there are.
+    int depth = 0, p, k, v;
+
+    length = 0;
+    cells++;
+    for (p = 0; p < c.polygons(); p++) {
+      while (depth > c.level(p)) end(open[--depth]);
+      if (depth == open.length) open = grow(open, 2*depth);
+      open[depth++] = length;
+      put(BEGIN, c.level(p), c.polyID(p), 0);
+      for (k = c.firstPiece(p); k < c.endPiece(p); k++) {
+        run(c.piece(k), c.endVertex(k) - c.firstVertex(k));
+        for (v = c.firstVertex(k); v < c.endVertex(k); v++) {
+          ev[length++] = c.x(v);
+          ev[length++] = c.y(v);
+        }
+        vertices += c.endVertex(k) - c.firstVertex(k);
+      }
+    }
+    while (depth > 0) end(open[--depth]);
+    return length;
+  }  // decode
+
+  public int[] events() {
+    // the events of the last cell decoded, up to length().
+    return ev;
+  }
+
+  public int length() {
+    return length;
+  }
+
+  public long cells() {
+    // cells decoded so far.
+    return cells;
+  }
+
+  public long vertices() {
+    // vertices decoded so far.
+    return vertices;
+  }
+
+  public RANGSCell cell()
+  {
+    // the last cell decoded, as a RANGSCell.
+    int nPolys = 0, nPieces = 0, nVertices = 0, i;
+
+    for (i = 0; i < length; ) {
+      if (ev[i] == BEGIN) {
+        nPolys++;
+        i += 4;
+      }
+      else if (ev[i] == RUN) {
+        nPieces++;
+        nVertices += ev[i + 2];
+        i += 3 + 2*ev[i + 2];
+      }
+      else i++;
+    }
+
+    int polys[] = new int[3*nPolys], pieces[] = new int[2*nPieces], xy[] = new int[2*nVertices];
+    int p = 0, k = 0, v = 0;
+    for (i = 0; i < length; ) {
+      if (ev[i] == BEGIN) {
+        polys[p++] = ev[i + 1];
+        polys[p++] = ev[i + 2];
+        polys[p++] = k/2;
+        i += 4;
+      }
+      else if (ev[i] == RUN) {
+        int n = 2*ev[i + 2];
+        pieces[k++] = ev[i + 1];
+        pieces[k++] = v/2;
+        System.arraycopy(ev, i + 3, xy, v, n);
+        v += n;
+        i += 3 + n;
+      }
+      else i++;
+    }
+    return new RANGSCell(polys, pieces, xy);
+  }  // cell
+
+  private void put(int a, int b, int c, int d)
+  {
+    if (length + 4 > ev.length) ev = grow(ev, 2*ev.length);
+    ev[length++] = a;
+    ev[length++] = b;
+    ev[length++] = c;
+    ev[length++] = d;
+  }  // put
+
+  private void run(int piece, int n)
+  {
+    // starts a RUN of n vertices, with room for them.
+    if (length + 3 + 2*n > ev.length) ev = grow(ev, Math.max(2*ev.length, length + 3 + 2*n));
+    ev[length++] = RUN;
+    ev[length++] = piece;
+    ev[length++] = n;
+  }  // run
+
+  private void end(int begin)
+  {
+    // ends the polygon whose BEGIN is at begin.
+    if (length == ev.length) ev = grow(ev, 2*ev.length);
+    ev[length++] = END;
+    ev[begin + 3] = length;
+  }  // end
+
+  private static int[] grow(int a[], int len) {
+    int b[] = new int[len];
+    System.arraycopy(a, 0, b, 0, a.length);
+    return b;
+  }
+
+}
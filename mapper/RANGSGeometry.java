@@ -0,0 +1,140 @@
+import java.io.*;
+
+public class RANGSGeometry {
+
+  /* Streams the polygons of the cells of a box to a
+  ** RANGSVisitor, for anything that wants the coastlines
+  ** rather than a picture of them: exporters, masks,
+  ** statistics.
+  **
+  ** Vertices are handed over a run at a time in arrays the
+  ** caller gives to visit.  Made on a RANGSStore, cells
+  ** come from its cache (a miss decodes the cell and so
+  ** allocates it); made on bare RANGSData, every cell goes
+  ** through one RANGSDecoder each time, whose buffers are
+  ** kept, and nothing is cached.  Either way, once warm,
+  ** visiting allocates nothing.
+  **
+  ** One RANGSGeometry is for one thread; several can share
+  ** a store.
+  *************************************/
+
+  private RANGSStore store;  // null: decode from data every time
+  private RANGSData data;
+  private RANGSDecoder decoder;  // for data, when there is no store
+
+  /******************
+  ** Constructors
+  ******************/
+
+  RANGSGeometry(RANGSStore s, int res) throws IOException {
+    // resolution res of s, through its cache.
+    store = s;
+    data = s.open(res);
+  }
+
+  RANGSGeometry(RANGSData d) {
+    // d, decoded as it is read.
+    data = d;
+    decoder = new RANGSDecoder(d);
+  }
+
+  /*******************
+  ** Methods
+  *******************/
+
+  public long visit(double west, double north, double east, double south,
+                    RANGSVisitor v, int x[], int y[]) throws IOException
+  {
+    /* hands v every polygon of every cell that overlaps
+    ** the box west..east, north..south, in degrees, whole:
+    ** nothing is clipped to the box.  west may be below 0
+    ** or east above 360 to cross the date line.  x and y
+    ** are the arrays runs are handed over in, at least 1
+    ** long.  Returns the number of vertices handed over.
+    */
+    long n = 0;
+    int i, j, ix;
+
+    // a cell at row i, column j covers i..i+1, j..j+1.
+    for (i = (int)Math.ceil(north) - 1; i >= (int)Math.floor(south); i--) {
+      if (i > 89 || i < -90) continue; // no cells beyond the poles
+      for (j = (int)Math.floor(west); j < (int)Math.ceil(east); j++) {
+        ix = ((j % 360) + 360) % 360;
+        if (data.cellClass(ix, i) == RANGSData.EMPTY) continue;
+        if (store != null) n += cell(store.getCell(data, ix, i), j, i, (j - ix)*1000000, v, x, y);
+        else n += events(j, i, (j - ix)*1000000, decoder.decode(ix, i), v, x, y);
+      }
+    }
+    return n;
+  }  // visit
+
+  private long cell(RANGSCell c, int j, int i, int xOffset, RANGSVisitor v, int x[], int y[])
+  {
+    // hands v the polygons of cached cell c, at column j,
+    // row i, straight from the cell.
+    int p, k, first, end, m, a;
+    long count = 0;
+
+    for (p = 0; p < c.polygons(); p++) {
+      v.beginPolygon(j, i, c.level(p), c.polyID(p));
+      for (k = c.firstPiece(p); k < c.endPiece(p); k++) {
+        end = c.endVertex(k);
+        count += end - c.firstVertex(k);
+        for (first = c.firstVertex(k); first < end; first += m) {
+          m = Math.min(end - first, Math.min(x.length, y.length));
+          for (a = 0; a < m; a++) {
+            x[a] = c.x(first + a) + xOffset;
+            y[a] = c.y(first + a);
+          }
+          v.run(x, y, m, c.isRim(k), c.flg(k));
+        }
+      }
+      v.endPolygon();
+    }
+    return count;
+  }  // cell
+
+  private long events(int j, int i, int xOffset, int len, RANGSVisitor v, int x[], int y[])
+  {
+    /* hands v the events of the cell in the decoder, at
+    ** column j, row i.  A polygon ends, for v, as soon as
+    ** its runs do, before the polygons nested in it.
+    */
+    int ev[] = decoder.events(), k = 0, n, m, c, piece;
+    boolean open = false;
+    long count = 0;
+
+    while (k < len) {
+      switch (ev[k]) {
+      case RANGSDecoder.BEGIN:
+        if (open) v.endPolygon();
+        v.beginPolygon(j, i, ev[k + 1], ev[k + 2]);
+        open = true;
+        k += 4;
+        break;
+      case RANGSDecoder.RUN:
+        piece = ev[k + 1];
+        n = ev[k + 2];
+        k += 3;
+        count += n;
+        while (n > 0) {
+          m = Math.min(n, Math.min(x.length, y.length));
+          for (c = 0; c < m; c++, k += 2) {
+            x[c] = ev[k] + xOffset;
+            y[c] = ev[k + 1];
+          }
+          v.run(x, y, m, (piece & 7) == 7, piece >> 4);
+          n -= m;
+        }
+        break;
+      default:  // END
+        if (open) v.endPolygon();
+        open = false;
+        k++;
+      }
+    }
+    return count;
+  }  // events
+
+}
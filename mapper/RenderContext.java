@@ -0,0 +1,354 @@
+import java.awt.*;
+
+public class RenderContext {
+
+  /* Everything needed to draw decoded cells onto a
+  ** Graphics: the viewport, the level of detail flags, the
+  ** colors, and the buffers the polygon being filled and
+  ** the shore line being drawn are collected in.
+  **
+  ** One context draws on one thread.  To draw a map on
+  ** several threads at once, give each its own context
+  ** (they are cheap) and its own Graphics.
+  **
+  ** Points are thinned out in screen space: a point no
+  ** more than tolerance pixels from the last one kept, in
+  ** x and in y, is dropped (tolerance 0 drops only points
+  ** on the same pixel).  The first point of a polygon or
+  ** line, and the point closing it, are always kept, so
+  ** every ring still closes where it started.
+  **
+  ** Cells that are one plain square (RANGSData.cellClass)
+  ** need not be decoded: fillCell queues them, and a run
+  ** of them along a row is filled as one rectangle just
+  ** before the next thing is drawn, or at flush().  The
+  ** pixels come out as drawCell would draw them.
+  *************************************/
+
+  private Viewport view;   // lon/lat to screen
+  private int flags;       // for level of detail
+  private Color mapColor[];
+
+  private boolean firstFill = true, firstShore = true;
+  private Color clr; // the current drawing color
+  private int fillPixels = 0, shorePixels = 0;  // indexes into point arrays
+  // screen coordinates of the polygon being filled and the
+  // shore line being drawn.  Grown as needed, never shrunk.
+  private int fillX[] = new int[1024], fillY[] = new int[1024];
+  private int shoreX[] = new int[1024], shoreY[] = new int[1024];
+  // screen coordinates of every vertex of the current cell.
+  private int cellX[] = new int[1024], cellY[] = new int[1024];
+  private int x0Fill = 0, y0Fill = 0, x0Shore = 0, y0Shore = 0;
+  private int tolerance = 0;     // pixels; -1 keeps every point
+  private long pointsIn = 0, pointsOut = 0;
+  private boolean uniformFill = true;
+  // a run of plain squares of one class along a row, not
+  // yet filled: first and last column, row, class.
+  private int runFirst, runLast, runRow, runClass = RANGSData.EMPTY;
+
+  /******************
+  ** Constructors
+  ******************/
+
+  RenderContext(Viewport view, int flags, Color mapColor[]) {
+    // the colors are copied, so changing them later does
+    // not affect a render in progress.
+    this.view = view;
+    this.flags = flags;
+    this.mapColor = mapColor.clone();
+  }
+
+  /*******************
+  ** Methods
+  *******************/
+
+  public Viewport viewport() {
+    return view;
+  }
+
+  public void setTolerance(int px) {
+    // -1 turns thinning off.
+    tolerance = px;
+  }
+
+  public long pointsIn() {
+    // points handed to the polygon and line buffers so far.
+    return pointsIn;
+  }
+
+  public long pointsOut() {
+    // of those, points drawn.
+    return pointsOut;
+  }
+
+  public void setUniformFill(boolean on) {
+    // false sends every cell through drawCell.
+    uniformFill = on;
+  }
+
+  public boolean fillsUniform() {
+    // true if fillCell may be used.  Squares are only ever
+    // outlined when flag bit 0 is set.
+    return uniformFill && (flags & 1) == 0;
+  }
+
+  public void fillCell(int j, int iy, int flg, Graphics g)
+  {
+    /* draws the cell at column j (may be outside 0..359),
+    ** latitude iy, which is a plain square of class flg.
+    ** Joins it to the run before if it is next to it.
+    */
+    if (runClass == flg && runRow == iy && runLast == j - 1) {
+      runLast = j;
+      return;
+    }
+    flush(g);
+    runFirst = runLast = j;
+    runRow = iy;
+    runClass = flg;
+  }  // fillCell
+
+  public void flush(Graphics g)
+  {
+    // fills the run of squares queued by fillCell.
+    int flg = runClass;
+
+    if (flg == RANGSData.EMPTY) return;
+    runClass = RANGSData.EMPTY;
+    if ((0xffff & flags & (1<<(8+flg))) == 0) return;  // not filled at this detail
+    int ix0 = ((runFirst % 360) + 360) % 360, ix1 = ((runLast % 360) + 360) % 360;
+    int x0 = view.projectX(ix0*1000000, runFirst - ix0);
+    int x1 = view.projectX((ix1 + 1)*1000000, runLast - ix1);
+    int y0 = view.projectY((runRow + 1)*1000000), y1 = view.projectY(runRow*1000000);
+    setFillColor(flg);
+    g.setColor(clr);
+    g.fillRect(Math.min(x0, x1), Math.min(y0, y1), Math.abs(x1 - x0), Math.abs(y1 - y0));
+  }  // flush
+
+  public void drawCell(RANGSCell c, int xOffset, Graphics g)
+  {
+    /* draws all polygons of a decoded cell.  xOffset is
+    ** added to its longitudes, to draw it east of 360 or
+    ** west of 0.
+    */
+    int p;
+
+    flush(g);
+    if (c.vertices() > cellX.length) {
+      cellX = new int[2*c.vertices()];
+      cellY = new int[2*c.vertices()];
+    }
+    view.project(c, xOffset, cellX, cellY);
+    for (p = 0; p < c.polygons(); p++) drawPolygon(c, p, g);
+  }  // drawCell
+
+  private void drawPolygon(RANGSCell c, int p, Graphics g)
+  {
+    // draws polygon p of a decoded cell, already projected
+    // into cellX and cellY.
+    firstShore = true;
+    firstFill = true;
+    int polyID = c.polyID(p), fill = 0, shore = 0, flg = 0, i = 0, k;
+
+    for (k = c.firstPiece(p); k < c.endPiece(p); k++) {
+      flg = c.flg(k);
+      i = 1<<(8+flg);
+      fill = 0xffff & flags & i;
+      shore = (flags & (1 << flg)) & 0xffff;
+
+      if (c.isRim(k)) readRimSegment(c, k, fill, shore, flg, g);
+      else readCellSegment(c, k, fill, shore, polyID, flg, g);
+    }
+
+    if (firstFill == false) {
+      bufferClose ( x0Fill, y0Fill, 1);
+      bufferRestart ( x0Fill, y0Fill, 1, g);
+    }
+
+    if (firstShore == false) {
+      bufferClose ( x0Shore, y0Shore, 0);
+      bufferRestart ( x0Shore, y0Shore, 0, g);
+    }
+  }  // drawPolygon
+
+  private void readCellSegment (RANGSCell c, int k, int fill, int shore, int polyID, int flg, Graphics g)
+  {
+    // draws RANGS line segments
+    int i, v, nPoints;
+
+    v = c.firstVertex(k);
+    nPoints = c.endVertex(k) - v;
+    for (i = 1; i <= nPoints; i++, v++) {
+      if (fill != 0) {
+	addFillPoint(cellX[v], cellY[v], flg, g);
+      }
+      if (shore != 0) {
+	if ((flags & 1) != 0) {
+	  addShorePoint(cellX[v], cellY[v], flg, g);
+	}
+	else {
+	  if (polyID >= 0) {
+	    if (i == 1) addShorePoint(cellX[v], cellY[v], flg, g);
+	    else if (i == nPoints) addFinalShorePoint(cellX[v], cellY[v], g);
+	  }
+	}
+      }
+    }
+  }  // readCellSegment
+
+  private void readRimSegment(RANGSCell c, int k, int fill, int shore, int flg, Graphics g)
+  {
+    // draws RANGS data for cell rims
+    int v;
+
+    for (v = c.firstVertex(k); v < c.endVertex(k); v++) {
+      if (fill != 0) addFillPoint(cellX[v], cellY[v], flg, g);
+      if (shore != 0) addShorePoint(cellX[v], cellY[v], flg, g);
+    }
+  }  // readRimSegment
+
+  private void addShorePoint(int x, int y, int flg, Graphics g)
+  {
+    // adds a shore point to the buffer
+    if (firstShore == true) {
+      setShoreColor(flg);
+      g.setColor(clr);
+      bufferRestart(x, y, 0, g);
+      firstShore = false;
+      x0Shore = x;
+      y0Shore = y;
+    }
+    else {
+      bufferAddLine (x, y, 0, g);
+    }
+  }  // addShorePoint
+
+  private void addFillPoint(int x, int y, int flg, Graphics g)
+  {
+    // adds a fill point to the buffer
+    if (firstFill == true) {
+      setFillColor(flg);
+      g.setColor(clr);
+      bufferRestart(x, y, 1, g);
+      firstFill = false;
+      x0Fill = x;
+      y0Fill = y;
+    }
+    else {
+      bufferAddLine(x, y, 1, g);
+    }
+  }  // addFillPoint
+
+
+  private void addFinalShorePoint(int x, int y, Graphics g)
+  {
+    // adds the final shore point to the buffer
+    bufferRestart (x, y, 0, g);
+  } // addFinalShorePoint
+
+  private void setShoreColor(int flg)
+  {
+    // set the default color for the shore line.
+    if (flg <= 4) {
+      clr = mapColor[5];
+      return;
+    }
+    else if (flg == 17) {
+      clr = mapColor[6];
+      return;
+    }
+    else clr = mapColor[7];
+  }  // setShoreColor
+
+  private void setFillColor(int flg)
+  {
+    // set the default color to fill with.
+    if (flg <= 4) {
+      clr = mapColor[flg];
+      return;
+    }
+    else if (flg == 17) {
+      clr = mapColor[6];
+      return;
+    }
+    else clr = mapColor[7];
+  }  //setFillColor
+
+  private void bufferAddLine(int x, int y, int fill, Graphics g)
+  {
+    // add another point to the line defined in the buffer,
+    // unless it is too close to the last one.
+    pointsIn++;
+    if (fill != 0) {
+      if (tolerance >= 0 && Math.abs(x - fillX[fillPixels]) <= tolerance
+          && Math.abs(y - fillY[fillPixels]) <= tolerance) return;
+    }
+    else {
+      if (tolerance >= 0 && Math.abs(x - shoreX[shorePixels]) <= tolerance
+          && Math.abs(y - shoreY[shorePixels]) <= tolerance) return;
+    }
+    bufferPut(x, y, fill);
+  }  // bufferAddLine
+
+  private void bufferClose(int x, int y, int fill)
+  {
+    // add the point that closes a ring, however close it
+    // is, unless it is the last point already.
+    pointsIn++;
+    if (tolerance >= 0) {
+      if (fill != 0 && x == fillX[fillPixels] && y == fillY[fillPixels]) return;
+      if (fill == 0 && x == shoreX[shorePixels] && y == shoreY[shorePixels]) return;
+    }
+    bufferPut(x, y, fill);
+  }  // bufferClose
+
+  private void bufferPut(int x, int y, int fill)
+  {
+    // append a point to the buffer.
+    pointsOut++;
+    if (fill != 0) {
+      fillPixels++;
+      if (fillPixels == fillX.length) {
+        fillX = grow(fillX);
+        fillY = grow(fillY);
+      }
+      fillX[fillPixels] = x;
+      fillY[fillPixels] = y;
+    }
+    else {
+      shorePixels++;
+      if (shorePixels == shoreX.length) {
+        shoreX = grow(shoreX);
+        shoreY = grow(shoreY);
+      }
+      shoreX[shorePixels] = x;
+      shoreY[shorePixels] = y;
+    }
+  }  // bufferPut
+
+  private void bufferRestart(int x, int y, int fill, Graphics g)
+  {
+    // draw and clear the buffer
+    if (fill != 0) {
+      if (fillPixels != 0) g.fillPolygon(fillX, fillY, fillPixels + 1);
+      fillPixels = 0;
+      fillX[0] = x;
+      fillY[0] = y;
+    }
+    else {
+      if (shorePixels != 0) g.drawPolyline(shoreX, shoreY, shorePixels + 1);
+      shorePixels = 0;
+      shoreX[0] = x;
+      shoreY[0] = y;
+    }
+  } // bufferRestart
+
+  private static int[] grow(int a[])
+  {
+    // returns a copy of a twice as long.
+    int b[] = new int[2*a.length];
+    System.arraycopy(a, 0, b, 0, a.length);
+    return b;
+  }  // grow
+
+}
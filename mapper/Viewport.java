@@ -0,0 +1,114 @@
+public class Viewport {
+
+  /* Maps longitude/latitude onto device pixels.
+  ** Built once per render from the corners of the map and
+  ** the size of the drawing area.
+  **
+  ** Cell vertices are projected from their offset from the
+  ** top left corner in whole micro-degrees, so a point two
+  ** cells share lands on the same pixel from either cell,
+  ** and a point on the edge of the map lands exactly on the
+  ** edge of the drawing area.
+  *************************************/
+
+  private double west, north;   // degrees at the top left corner
+  private double sx, sy;        // pixels per degree, sy < 0
+  private int left, top;        // pixel at the top left corner
+  private int width, height;
+  private long westMicro, northMicro;  // the corner in micro-degrees
+  private double spanX, spanY;  // micro-degrees across and down, spanY < 0
+
+  /******************
+  ** Constructors
+  ******************/
+
+  Viewport(double west, double north, double east, double south,
+           int left, int top, int width, int height) {
+    // maps west..east onto left..left+width and
+    // north..south onto top..top+height.
+    this.west = west;
+    this.north = north;
+    this.left = left;
+    this.top = top;
+    this.width = width;
+    this.height = height;
+    sx = width/(east - west);
+    sy = height/(south - north);
+    westMicro = Math.round(west*1000000);
+    northMicro = Math.round(north*1000000);
+    spanX = Math.round(east*1000000) - westMicro;
+    spanY = Math.round(south*1000000) - northMicro;
+  }
+
+  /*******************
+  ** Methods
+  *******************/
+
+  public int x(double lon) {
+    return (int)(left + (lon - west)*sx);
+  }
+
+  public int y(double lat) {
+    return (int)(top + (lat - north)*sy);
+  }
+
+  public double lon(double x) {
+    // the longitude at pixel column x.
+    return west + (x - left)/sx;
+  }
+
+  public double lat(double y) {
+    // the latitude at pixel row y.
+    return north + (y - top)/sy;
+  }
+
+  public double pixelsPerDegree() {
+    return sx;
+  }
+
+  public boolean sameScale(Viewport v, int width, int height) {
+    /* whether v maps degrees onto pixels as this does, to
+    ** within a twentieth of a pixel across width by height,
+    ** so that the two differ only by a shift.
+    */
+    return left == v.left && top == v.top
+      && Math.abs(sx - v.sx)*width < 0.05*Math.abs(sx)
+      && Math.abs(sy - v.sy)*height < 0.05*Math.abs(sy);
+  }  // sameScale
+
+  public double shiftX(Viewport from) {
+    // pixels right of where from draws it that this draws a
+    // point, longitudes taken modulo 360.
+    double d = from.west - west;
+    return (d - 360*Math.rint(d/360))*sx;
+  }
+
+  public double shiftY(Viewport from) {
+    // pixels down of where from draws it that this draws a
+    // point.
+    return (from.north - north)*sy;
+  }
+
+  public int projectX(int x, int xOffset) {
+    // as project() does it, for x in micro-degrees.
+    return (int)(left + (x + xOffset*1000000L - westMicro)*(double)width/spanX);
+  }
+
+  public int projectY(int y) {
+    return (int)(top + (y - northMicro)*(double)height/spanY);
+  }
+
+  public void project(RANGSCell c, int xOffset, int xs[], int ys[]) {
+    // projects every vertex of c into xs and ys.  xOffset is
+    // added to the longitudes, to draw cells east of 360
+    // or west of 0.
+    long ox = xOffset*1000000L - westMicro;
+    int v, n = c.vertices();
+
+    for (v = 0; v < n; v++) {
+      xs[v] = (int)(left + (c.x(v) + ox)*(double)width/spanX);
+      ys[v] = (int)(top + (c.y(v) - northMicro)*(double)height/spanY);
+    }
+  }  // project
+
+}
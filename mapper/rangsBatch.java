@@ -0,0 +1,175 @@
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.imageio.*;
+
+public class rangsBatch {
+
+  /* Renders RANGS maps to PNG files with no window.
+  **
+  ** usage: java rangsBatch [options] -box lon1,lat1,lon2,lat2 -o map.png
+  **        java rangsBatch [options] -batch boxes.txt
+  **
+  ** options:
+  **   -dir d          where the RANGS files are (default .)
+  **   -res n          resolution, 0 = finest, 4 = coarsest (3)
+  **   -detail n       0 coastlines, 1 lakes, 2 islands in
+  **                   lakes, 3 ponds on islands (3)
+  **   -outline        outlines only, no fill
+  **   -color i=rrggbb color of map feature i, as rangs.getColor
+  **   -background rrggbb
+  **   -size wxh       image size in pixels (800x400)
+  **   -tolerance n    leave out points within n pixels of
+  **                   the last one drawn (0)
+  **   -threads n      renders at once in batch mode (cores)
+  **
+  ** A batch file has one map per line:
+  **   lon1 lat1 lon2 lat2 file.png [width height]
+  ** Blank lines and lines starting with # are skipped.
+  ** The corners are as in the rangs panel: top left, then
+  ** bottom right.
+  *************************************/
+
+  public static void main(String args[]) throws Exception
+  {
+    System.setProperty("java.awt.headless", "true");
+    File dir = new File(".");
+    int res = 3, detail = 3, width = 800, height = 400, tolerance = 0;
+    int threads = Runtime.getRuntime().availableProcessors();
+    boolean fill = true;
+    float box[] = null;
+    String out = null, batch = null;
+    Vector<String> colors = new Vector<String>();
+    Color background = Color.white;
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        if (args[i].equals("-dir")) dir = new File(args[++i]);
+        else if (args[i].equals("-res")) res = Integer.parseInt(args[++i]);
+        else if (args[i].equals("-detail")) detail = Integer.parseInt(args[++i]);
+        else if (args[i].equals("-outline")) fill = false;
+        else if (args[i].equals("-color")) colors.addElement(args[++i]);
+        else if (args[i].equals("-background")) background = parseColor(args[++i]);
+        else if (args[i].equals("-threads")) threads = Integer.parseInt(args[++i]);
+        else if (args[i].equals("-tolerance")) tolerance = Integer.parseInt(args[++i]);
+        else if (args[i].equals("-o")) out = args[++i];
+        else if (args[i].equals("-batch")) batch = args[++i];
+        else if (args[i].equals("-size")) {
+          String s[] = args[++i].split("x");
+          width = Integer.parseInt(s[0]);
+          height = Integer.parseInt(s[1]);
+        }
+        else if (args[i].equals("-box")) {
+          String s[] = args[++i].split(",");
+          box = new float[4];
+          for (int k = 0; k < 4; k++) box[k] = Float.parseFloat(s[k]);
+        }
+        else throw new IllegalArgumentException("unknown option " + args[i]);
+      }
+      if (batch == null && (box == null || out == null))
+        throw new IllegalArgumentException("need -box and -o, or -batch");
+    } catch (RuntimeException e) {
+      System.err.println(e.getMessage());
+      System.err.println("usage: java rangsBatch [options] -box lon1,lat1,lon2,lat2 -o map.png");
+      System.err.println("       java rangsBatch [options] -batch boxes.txt");
+      System.exit(1);
+    }
+
+    HeadlessMap map = new HeadlessMap(RANGSData.open(dir, res));
+    map.setDetail(detail, fill);
+    map.setBackground(background);
+    map.setTolerance(tolerance);
+    for (int i = 0; i < colors.size(); i++) {
+      String s[] = colors.elementAt(i).split("=");
+      map.setColor(Integer.parseInt(s[0]), parseColor(s[1]));
+    }
+
+    int failed = 0;
+    try {
+      if (batch == null)
+        ImageIO.write(map.render(box[0], box[1], box[2], box[3], width, height), "png", new File(out));
+      else failed = runBatch(map, new File(batch), width, height, threads);
+    } finally {
+      map.data().close();
+    }
+    if (failed > 0) System.exit(2);
+  } // main
+
+  static Color parseColor(String s)
+  {
+    // rrggbb in hex.
+    return new Color(Integer.parseInt(s, 16));
+  }  // parseColor
+
+  static int runBatch(final HeadlessMap map, File list, int width, int height, int threads)
+    throws IOException, InterruptedException
+  {
+    /* renders every map in the batch file on a pool of
+    ** threads.  Returns how many failed; each failure is
+    ** reported and the rest carry on.
+    */
+    Vector<Callable<Object>> jobs = new Vector<Callable<Object>>();
+    Vector<String> names = new Vector<String>();
+    BufferedReader in = new BufferedReader(new FileReader(list));
+    String line;
+    int n = 0, failed = 0;
+
+    try {
+      while ((line = in.readLine()) != null) {
+        n++;
+        line = line.trim();
+        if (line.length() == 0 || line.startsWith("#")) continue;
+        final String f[] = line.split("\\s+");
+        if (f.length != 5 && f.length != 7) {
+          System.err.println(list + ":" + n + ": expected lon1 lat1 lon2 lat2 file.png [width height]");
+          failed++;
+          continue;
+        }
+        final float c[] = new float[4];
+        final int w, h;
+        try {
+          for (int k = 0; k < 4; k++) c[k] = Float.parseFloat(f[k]);
+          w = (f.length == 7) ? Integer.parseInt(f[5]) : width;
+          h = (f.length == 7) ? Integer.parseInt(f[6]) : height;
+        } catch (NumberFormatException e) {
+          System.err.println(list + ":" + n + ": " + e.getMessage());
+          failed++;
+          continue;
+        }
+        jobs.addElement(new Callable<Object>() {
+          public Object call() throws IOException {
+            BufferedImage img = map.render(c[0], c[1], c[2], c[3], w, h);
+            ImageIO.write(img, "png", new File(f[4]));
+            return null;
+          }
+        });
+        names.addElement(f[4]);
+      }
+    } finally {
+      in.close();
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+    long t = System.nanoTime();
+    try {
+      java.util.List<Future<Object>> results = pool.invokeAll(jobs);
+      for (int i = 0; i < results.size(); i++) {
+        try {
+          results.get(i).get();
+        } catch (ExecutionException e) {
+          System.err.println(names.elementAt(i) + ": " + e.getCause());
+          failed++;
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+    t = System.nanoTime() - t;
+    System.out.println(jobs.size() + " maps in " + t/1000000 + " ms on " + threads
+                       + " threads, " + failed + " failed");
+    return failed;
+  }  // runBatch
+
+}
@@ -0,0 +1,1029 @@
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+
+public class rangsBench {
+
+  /* Benchmarks for the RANGS map code.  Runs headless.
+  **
+  ** usage: java rangsBench <benchmark> [-dir d] [-res 0,1,2,3,4]
+  **                                    [-threads 1,2,4]
+  **                                    [-clients n] [-requests n]
+  **
+  ** benchmarks:
+  **   files  world render with the RandomAccessFile reader
+  **          and the memory mapped reader, and from the
+  **          rangsPack file if there is one, counting reads.
+  **   cat    cost of looking up one cell's cel address.
+  **   cells  world render through the decoded cell cache,
+  **          with its hit rate and memory per cell.
+  **   alloc  bytes allocated per vertex in a warm render.
+  **   project  cost of projecting one vertex onto the screen.
+  **   bands  warm world render drawn in parallel bands, on
+  **          1 up to all cores (or the -threads given).
+  **   auto   render time against zoom, around Denmark, at
+  **          each fixed resolution and with AUTO.
+  **   flip   world render switching back and forth between
+  **          the -res given, on one map.
+  **   progressive  time to first pixel and to the final
+  **          map, through the background renderer, with and
+  **          without a coarse first pass.  Cold cache.
+  **   pan    frame time, through the background renderer,
+  **          of a scroll by a quarter of the map and of a
+  **          10 pixel drag, shifting the last map along,
+  **          against redrawing the whole map; and how many
+  **          pixels the shifted map differs by from a
+  **          straight render.  Warm cache, Europe.
+  **   wheel  a spin of 10 wheel ticks zooming in on
+  **          Denmark from Europe: time to paint the stretched
+  **          map after each tick, and to the new map on
+  **          screen, from asking for it and from the last tick,
+  **          against drawing a map at each tick.  Warm cache.
+  **   decode  every cell of each resolution through one
+  **          RANGSDecoder, into events only and on into
+  **          RANGSCells (as decodeCell does), from the mapped
+  **          files and from the pack if there is one: cells
+  **          and vertices a second, best of 9.
+  **   visit  every polygon of the world streamed through a
+  **          RANGSVisitor, decoded from the files and from a
+  **          warm store's cache: vertices a second, and bytes
+  **          allocated per vertex.  Best of 29.
+  **   contend  maps drawn a second by 1, 2, 4, 8 threads
+  **          (or -threads) all drawing from one shared store:
+  **          on one map, with the lock drawRANGS used to hold
+  **          and without it, and each on its own map, rangs
+  **          panels and HeadlessMaps in turn.  The world, warm
+  **          cache.  With one core, threads can only show what
+  **          they cost, not what they gain.
+  **   decimate  points drawn and warm render time against
+  **          zoom, with thinning off and at 0, 1 and 2 pixels.
+  **   zip    opening rangsN.zip (as shipped) against the
+  **          same files extracted, and decoding every cell
+  **          twice.  With no rim file, cells that need one are
+  **          counted and skipped.
+  **   pacific  a mid-Pacific view and the world, with and
+  **          without filling plain square cells undecoded:
+  **          time to classify the cells, cold and warm render
+  **          time, cells decoded.
+  **   tiles  load test of rangsTileServer: -clients at once
+  **          ask for -requests random tiles, zoom 0 to 6,
+  **          twice (cold cache, then warm); reports latency
+  **          percentiles and tiles/sec.
+  **
+  ** Resolutions whose files are not in dir are skipped.
+  *************************************/
+
+  static File dir = new File(".");
+  static int res[] = {0, 1, 2, 3, 4};
+  static int threads[] = null;
+  static int clients = 32, requests = 2000;
+  static int width = 1440, height = 720;
+
+  public static void main(String args[]) throws Exception
+  {
+    System.setProperty("java.awt.headless", "true");
+    if (args.length == 0) {
+      System.err.println("usage: java rangsBench <benchmark> [-dir d] [-res 0,1,2,3,4]");
+      System.exit(1);
+    }
+    for (int i = 1; i < args.length; i++) {
+      if (args[i].equals("-dir")) dir = new File(args[++i]);
+      else if (args[i].equals("-res")) res = parseList(args[++i]);
+      else if (args[i].equals("-threads")) threads = parseList(args[++i]);
+      else if (args[i].equals("-clients")) clients = Integer.parseInt(args[++i]);
+      else if (args[i].equals("-requests")) requests = Integer.parseInt(args[++i]);
+    }
+
+    if (args[0].equals("files")) benchFiles();
+    else if (args[0].equals("cat")) benchCat();
+    else if (args[0].equals("cells")) benchCells();
+    else if (args[0].equals("alloc")) benchAlloc();
+    else if (args[0].equals("project")) benchProject();
+    else if (args[0].equals("bands")) benchBands();
+    else if (args[0].equals("tiles")) benchTiles();
+    else if (args[0].equals("auto")) benchAuto();
+    else if (args[0].equals("flip")) benchFlip();
+    else if (args[0].equals("progressive")) benchProgressive();
+    else if (args[0].equals("pan")) benchPan();
+    else if (args[0].equals("wheel")) benchWheel();
+    else if (args[0].equals("decode")) benchDecode();
+    else if (args[0].equals("visit")) benchVisit();
+    else if (args[0].equals("contend")) benchContend();
+    else if (args[0].equals("decimate")) benchDecimate();
+    else if (args[0].equals("zip")) benchZip();
+    else if (args[0].equals("pacific")) benchPacific();
+    else System.err.println("unknown benchmark " + args[0]);
+  } // main
+
+  static int[] parseList(String s)
+  {
+    String p[] = s.split(",");
+    int l[] = new int[p.length];
+    for (int i = 0; i < p.length; i++) l[i] = Integer.parseInt(p[i].trim());
+    return l;
+  }  // parseList
+
+  static String nsPer(long t, long n)
+  {
+    return String.format("%.2f", (double)t/n);
+  }  // nsPer
+
+  static RANGSData open(int r, boolean mapped)
+  {
+    // returns null, after saying so, if the files aren't there.
+    try {
+      return RANGSData.open(dir, r, mapped);
+    } catch (IOException e) {
+      System.out.println("resolution " + r + ": skipped, " + e.getMessage());
+      return null;
+    }
+  }  // open
+
+  static RANGSData openPacked(int r)
+  {
+    // null, quietly, if there is no pack.
+    try {
+      return RANGSData.openPacked(dir, r);
+    } catch (IOException e) {
+      return null;
+    }
+  }  // openPacked
+
+  static long renderWorld(rangs map)
+  {
+    // draws the whole world once, returns nanoseconds taken.
+    BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics g = img.getGraphics();
+    long t = renderWorld(map, g);
+    g.dispose();
+    return t;
+  }  // renderWorld
+
+  static long renderWorld(rangs map, Graphics g)
+  {
+    map.setSize(width, height);
+    map.setView(0, 89, 359, -89);
+    long t = System.nanoTime();
+    map.drawRANGS(g);
+    return System.nanoTime() - t;
+  }  // renderWorld
+
+  static void benchFiles() throws IOException
+  {
+    // world render, cold and warm, for each reader.
+    System.out.println("reader  res  cold ms  warm ms  reads+seeks cold / warm");
+    for (int i = 0; i < res.length; i++) {
+      for (int m = 0; m < 3; m++) {
+        RANGSData d = (m < 2) ? open(res[i], m == 1) : openPacked(res[i]);
+        if (d == null) break;
+        rangs map = new rangs(res[i], d);
+        long cold = renderWorld(map);
+        long coldReads = d.reads();
+        long warm = renderWorld(map);
+        System.out.println((m == 2 ? "packed" : m == 1 ? "mapped" : "file  ") + "  " + res[i]
+                           + "  " + cold/1000000 + "  " + warm/1000000
+                           + "  " + coldReads + " / " + (d.reads() - coldReads));
+        d.close();
+      }
+    }
+  }  // benchFiles
+
+  static void benchCat() throws IOException
+  {
+    /* per-cell address lookup over the whole world and over
+    ** the default USA view: the old catCache of 32768
+    ** addresses, against the cat array.  The old Cache is
+    ** gone, so its lookup is copied here as it was: boxed
+    ** keys in a Hashtable, looked up twice on a hit, the
+    ** oldest put dropped when full, a seek and read on a
+    ** miss.
+    */
+    int world[] = {0, 89, 359, -90}, usa[] = {230, 50, 300, 25};
+    int rounds = 50;
+
+    System.out.println("lookup    res  view   ns/cell");
+    for (int i = 0; i < res.length; i++) {
+      RANGSData d = open(res[i], true);
+      if (d == null) continue;
+      RandomAccessFile hCAT = new RandomAccessFile(new File(dir, "rangs(" + res[i] + ").cat"), "r");
+      for (int v = 0; v < 2; v++) {
+        int box[] = (v == 0) ? world : usa;
+        int cells = (box[2] - box[0] + 1)*(box[1] - box[3] + 1);
+        long sum = 0, t;
+
+        java.util.Hashtable<Long, Long> catCache = new java.util.Hashtable<Long, Long>(32768);
+        java.util.LinkedList<Long> catKeys = new java.util.LinkedList<Long>();
+        byte addrByte[] = new byte[4];
+        t = System.nanoTime();
+        for (int k = 0; k < rounds; k++) {
+          for (int iy = box[1]; iy >= box[3]; iy--) {
+            for (int ix = box[0]; ix <= box[2]; ix++) {
+              long catPos = 4*((89-iy)*360+ix);
+              Long o;
+              if (catCache.get(Long.valueOf(catPos)) != null) o = catCache.get(Long.valueOf(catPos));
+              else {
+                hCAT.seek(catPos);
+                hCAT.readFully(addrByte);
+                o = Long.valueOf((long)(UnsignedByte.toInt(addrByte[3])*0x1000000 + UnsignedByte.toInt(addrByte[2])*0x10000 + UnsignedByte.toInt(addrByte[1])*0x100 + UnsignedByte.toInt(addrByte[0])) - 1);
+                if (catKeys.size() == 32768) catCache.remove(catKeys.removeFirst());
+                catKeys.add(Long.valueOf(catPos));
+                catCache.put(Long.valueOf(catPos), o);
+              }
+              sum += o.longValue();
+            }
+          }
+        }
+        t = System.nanoTime() - t;
+        System.out.println("catCache  " + res[i] + "  " + (v == 0 ? "world" : "usa  ") + "  " + nsPer(t, (long)rounds*cells));
+
+        t = System.nanoTime();
+        for (int k = 0; k < rounds; k++) {
+          for (int iy = box[1]; iy >= box[3]; iy--) {
+            for (int ix = box[0]; ix <= box[2]; ix++) {
+              sum -= d.cellAddress(ix, iy);
+            }
+          }
+        }
+        t = System.nanoTime() - t;
+        System.out.println("int[]     " + res[i] + "  " + (v == 0 ? "world" : "usa  ") + "  " + nsPer(t, (long)rounds*cells));
+        if (sum != 0) System.out.println("lookups disagree!");
+      }
+      hCAT.close();
+      d.close();
+    }
+  }  // benchCat
+
+  static void benchCells() throws IOException
+  {
+    // cold then warm world render from the cell cache.
+    for (int i = 0; i < res.length; i++) {
+      RANGSData d = open(res[i], true);
+      if (d == null) continue;
+      rangs map = new rangs(res[i], d);
+      long cold = renderWorld(map);
+      System.out.println("res " + res[i] + " cold " + cold/1000000 + " ms, " + map.cacheStats());
+      long warm = renderWorld(map);
+      System.out.println("res " + res[i] + " warm " + warm/1000000 + " ms, " + map.cacheStats());
+      d.close();
+    }
+  }  // benchCells
+
+  static void benchAlloc() throws IOException
+  {
+    // heap allocated by a warm world render, per vertex drawn.
+    com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)java.lang.management.ManagementFactory.getThreadMXBean();
+    long id = Thread.currentThread().getId();
+    BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics g = img.getGraphics();
+
+    System.out.println("res  vertices  bytes allocated  bytes/vertex  ms");
+    for (int i = 0; i < res.length; i++) {
+      RANGSData d = open(res[i], true);
+      if (d == null) continue;
+      long vertices = 0;
+      for (int iy = 89; iy >= -89; iy--)
+        for (int ix = 0; ix < 360; ix++) vertices += d.decodeCell(ix, iy).vertices();
+
+      rangs map = new rangs(res[i], d);
+      for (int k = 0; k < 3; k++) renderWorld(map, g); // fill the cache, warm up
+      long b = mx.getThreadAllocatedBytes(id);
+      long t = renderWorld(map, g);
+      b = mx.getThreadAllocatedBytes(id) - b;
+      System.out.println(res[i] + "  " + vertices + "  " + b + "  "
+                         + String.format("%.3f", (double)b/vertices) + "  " + t/1000000);
+      d.close();
+    }
+    g.dispose();
+  }  // benchAlloc
+
+  static void benchProject() throws IOException
+  {
+    // projects every vertex of the world, first the old way
+    // (bounds, insets and scale looked up per vertex), then
+    // with a Viewport over each cell's vertex array.
+    javax.swing.JPanel panel = new javax.swing.JPanel();
+    int rounds = 10;
+
+    panel.setSize(width, height);
+    System.out.println("res  vertices  per-vertex ns  viewport ns");
+    for (int i = 0; i < res.length; i++) {
+      RANGSData d = open(res[i], true);
+      if (d == null) continue;
+      RANGSCell cells[] = new RANGSCell[RANGSData.CELLS];
+      long vertices = 0, sum = 0, t, t2 = 0;
+      for (int iy = 89; iy >= -90; iy--)
+        for (int ix = 0; ix < 360; ix++) {
+          RANGSCell c = cells[(89-iy)*360+ix] = d.decodeCell(ix, iy);
+          vertices += c.vertices();
+        }
+
+      for (int k = 0; k < 3; k++) { // warm up
+        sum += projectPerVertex(cells, panel);
+        sum -= projectViewport(cells);
+      }
+      t = System.nanoTime();
+      for (int k = 0; k < rounds; k++) sum += projectPerVertex(cells, panel);
+      t = System.nanoTime() - t;
+      t2 = System.nanoTime();
+      for (int k = 0; k < rounds; k++) sum -= projectViewport(cells);
+      t2 = System.nanoTime() - t2;
+
+      System.out.println(res[i] + "  " + vertices + "  " + nsPer(t, rounds*vertices)
+                         + "  " + nsPer(t2, rounds*vertices) + (sum == 0 ? "" : "  (results differ)"));
+      d.close();
+    }
+  }  // benchProject
+
+  static long projectPerVertex(RANGSCell cells[], Component panel)
+  {
+    // the transform rangs used to do for every vertex.
+    float lon1 = 0, lat1 = 89, lon2 = 359, lat2 = -89;
+    long sum = 0;
+    for (int n = 0; n < cells.length; n++) {
+      RANGSCell c = cells[n];
+      for (int v = 0; v < c.vertices(); v++) {
+        double lon = c.x(v) * 0.000001, lat = c.y(v) * 0.000001;
+        Rectangle r = panel.getBounds();
+        Insets in = ((Container)panel).getInsets();
+        sum += (int)(in.left + (lon - lon1)*((r.getWidth() - in.left - in.right)/(lon2 - lon1 + 1)));
+        sum += (int)(in.top + (lat - lat1 - 1 )*((r.getHeight()- in.top - in.bottom)/(lat2 - lat1 - 1)));
+      }
+    }
+    return sum;
+  }  // projectPerVertex
+
+  static int xs[] = new int[1 << 16], ys[] = new int[1 << 16];
+
+  static long projectViewport(RANGSCell cells[])
+  {
+    Viewport view = new Viewport(0, 90, 360, -89, 0, 0, width, height);
+    long sum = 0;
+    for (int n = 0; n < cells.length; n++) {
+      RANGSCell c = cells[n];
+      if (c.vertices() > xs.length) {
+        xs = new int[c.vertices()];
+        ys = new int[c.vertices()];
+      }
+      view.project(c, 0, xs, ys);
+      for (int v = 0; v < c.vertices(); v++) sum += xs[v] + ys[v];
+    }
+    return sum;
+  }  // projectViewport
+
+  static void benchBands() throws IOException
+  {
+    // warm world render on 1 to n threads, best of 5.
+    int cores = Runtime.getRuntime().availableProcessors();
+    if (threads == null) {
+      threads = new int[cores];
+      for (int n = 1; n <= cores; n++) threads[n - 1] = n;
+    }
+    BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics g = img.getGraphics();
+
+    System.out.println(cores + " cores");
+    System.out.println("res  threads  ms  speedup");
+    for (int i = 0; i < res.length; i++) {
+      RANGSData d = open(res[i], true);
+      if (d == null) continue;
+      rangs map = new rangs(res[i], d);
+      map.setSize(width, height);
+      map.setView(0, 89, 359, -89);
+      map.drawRANGS(g); // fill the cache
+      long one = 0;
+      for (int k = 0; k < threads.length; k++) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < 5; r++) {
+          long t = System.nanoTime();
+          map.drawRANGS(g, threads[k]);
+          best = Math.min(best, System.nanoTime() - t);
+        }
+        if (k == 0) one = best;
+        System.out.println(res[i] + "  " + threads[k] + "  " + best/1000000
+                           + "  " + String.format("%.2f", (double)one/best));
+      }
+      d.close();
+    }
+    g.dispose();
+  }  // benchBands
+
+  static void benchDecode() throws IOException
+  {
+    System.out.println("res  files  into  cells/sec  vertices/sec  ms");
+    for (int i = 0; i < res.length; i++) {
+      RANGSData files[] = {open(res[i], true), openPacked(res[i])};
+      String names[] = {"cat+cel+rim", "pak"};
+      for (int f = 0; f < files.length; f++) {
+        if (files[f] == null) continue;
+        for (int cells = 0; cells < 2; cells++) {
+          RANGSDecoder dec = new RANGSDecoder(files[f]);
+          long best = Long.MAX_VALUE, v = 0;
+          for (int r = 0; r < 10; r++) { // the first warms up the JIT
+            long v0 = dec.vertices(), t = System.nanoTime();
+            for (int c = 0; c < RANGSData.CELLS; c++) {
+              dec.decode(c % 360, 89 - c/360);
+              if (cells == 1) dec.cell();
+            }
+            if (r > 0) best = Math.min(best, System.nanoTime() - t);
+            v = dec.vertices() - v0;
+          }
+          System.out.println(res[i] + "  " + names[f] + "  " + (cells == 1 ? "cells " : "events")
+                             + "  " + String.format("%.0f", RANGSData.CELLS/(best/1e9))
+                             + "  " + String.format("%.0f", v/(best/1e9))
+                             + "  " + String.format("%.1f", best/1e6));
+        }
+        files[f].close();
+      }
+    }
+  }  // benchDecode
+
+  static class Counter implements RANGSVisitor {
+    // counts what it is handed, and sums it so none of it
+    // can be skipped.
+    long polygons = 0, vertices = 0, shore = 0, sum = 0;
+
+    public void beginPolygon(int ix, int iy, int level, int polyID) {
+      polygons++;
+    }
+
+    public void run(int x[], int y[], int n, boolean onShore, int flg) {
+      for (int k = 0; k < n; k++) sum += x[k] ^ y[k];
+      vertices += n;
+      if (onShore) shore += n;
+    }
+
+    public void endPolygon() {
+    }
+  }  // end inner class Counter
+
+  static void benchVisit() throws IOException
+  {
+    com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)java.lang.management.ManagementFactory.getThreadMXBean();
+    long id = Thread.currentThread().getId();
+    int x[] = new int[4096], y[] = new int[4096];
+
+    System.out.println("res  from  polygons  vertices  shore vertices  vertices/sec  ms  bytes/vertex");
+    for (int i = 0; i < res.length; i++) {
+      RANGSData d = open(res[i], true);
+      if (d == null) continue;
+      d.classify();
+      RANGSStore store = new RANGSStore(d, 256L << 20);
+      RANGSGeometry geo[] = {new RANGSGeometry(d), new RANGSGeometry(store, res[i])};
+      String names[] = {"files", "cache"};
+      for (int k = 0; k < geo.length; k++) {
+        Counter c = null;
+        long best = Long.MAX_VALUE, bytes = 0;
+        for (int r = 0; r < 30; r++) { // the first fills the cache and warms up the JIT
+          c = new Counter();
+          long b = mx.getThreadAllocatedBytes(id), t = System.nanoTime();
+          geo[k].visit(0, 90, 360, -90, c, x, y);
+          t = System.nanoTime() - t;
+          b = mx.getThreadAllocatedBytes(id) - b;
+          if (r > 0 && t < best) {
+            best = t;
+            bytes = b;
+          }
+        }
+        System.out.println(res[i] + "  " + names[k] + "  " + c.polygons + "  " + c.vertices + "  " + c.shore
+                           + "  " + String.format("%.0f", c.vertices/(best/1e9))
+                           + "  " + String.format("%.1f", best/1e6)
+                           + "  " + String.format("%.4f", (double)bytes/c.vertices));
+      }
+      d.close();
+    }
+  }  // benchVisit
+
+  static void benchContend() throws Exception
+  {
+    final String modes[] = {"one map, locked", "one map", "a map each"};
+    final int maps = 12;  // per thread
+    int counts[] = (threads == null) ? new int[] {1, 2, 4, 8} : threads;
+
+    System.out.println(Runtime.getRuntime().availableProcessors() + " cores");
+    System.out.println("res  threads  mode  maps/sec  ms a map");
+    for (int i = 0; i < res.length; i++) {
+      if (open(res[i], true) == null) continue;
+      final RANGSStore store = new RANGSStore(dir, 256L << 20);
+      final int r = res[i];
+
+      for (int round = 0; round < 2; round++) // the first fills the cache and warms up the JIT
+      for (int k = 0; k < counts.length; k++)
+        for (int m = 0; m < modes.length; m++) {
+          final int mode = m, n = counts[k];
+          final rangs shared = new rangs(store, r);
+          shared.setSize(width, height);
+          shared.setView(0, 89, 359, -89);
+          final java.util.concurrent.CountDownLatch start = new java.util.concurrent.CountDownLatch(1);
+          final Exception failed[] = {null};
+          Thread workers[] = new Thread[n];
+
+          for (int t = 0; t < n; t++) {
+            final int id = t;
+            workers[t] = new Thread() {
+              public void run() {
+                try {
+                  BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                  Graphics g = img.getGraphics();
+                  rangs map = null;
+                  HeadlessMap head = null;
+                  if (mode < 2) map = shared;
+                  else if (id % 2 == 0) {
+                    map = new rangs(store, r);
+                    map.setSize(width, height);
+                    map.setView(0, 89, 359, -89);
+                  }
+                  else head = new HeadlessMap(store, r);
+                  start.await();
+                  for (int j = 0; j < maps; j++) {
+                    if (mode == 0) {
+                      synchronized (map) {
+                        map.drawRANGS(g);
+                      }
+                    }
+                    else if (map != null) map.drawRANGS(g);
+                    else head.draw(g, 0, 89, 359, -89, width, height);
+                  }
+                  g.dispose();
+                } catch (Exception e) {
+                  failed[0] = e;
+                }
+              }
+            };
+            workers[t].start();
+          }
+          long t0 = System.nanoTime();
+          start.countDown();
+          for (int t = 0; t < n; t++) workers[t].join();
+          long took = System.nanoTime() - t0;
+          if (failed[0] != null) throw failed[0];
+          if (round == 1) System.out.println(r + "  " + n + "  " + modes[m]
+                             + "  " + String.format("%.1f", n*maps/(took/1e9))
+                             + "  " + String.format("%.1f", took/1e6/maps));
+        }
+      store.close();
+    }
+  }  // benchContend
+
+  static void benchTiles() throws Exception
+  {
+    // runs the tile server here and loads it over HTTP.
+    rangsTileServer server = new rangsTileServer(dir, 256L << 20, 3, true);
+    server.start(0);
+    final String base = "http://localhost:" + server.port() + "/";
+    java.util.Random rnd = new java.util.Random(42);
+    final String urls[] = new String[requests];
+    for (int n = 0; n < requests; n++) {
+      int z = rnd.nextInt(7);
+      urls[n] = base + z + "/" + rnd.nextInt(2 << z) + "/" + rnd.nextInt(1 << z) + ".png";
+    }
+
+    System.out.println(clients + " clients, " + requests + " requests, zoom 0-6");
+    System.out.println("pass  tiles/sec  p50 ms  p99 ms  max ms  bytes/tile");
+    for (int pass = 0; pass < 2; pass++) {
+      final long latency[] = new long[requests];
+      final long bytes[] = new long[1];
+      final java.util.concurrent.atomic.AtomicInteger next = new java.util.concurrent.atomic.AtomicInteger();
+      java.util.concurrent.ExecutorService pool = rangsTileServer.newExecutor();
+      long t = System.nanoTime();
+      for (int c = 0; c < clients; c++) {
+        pool.execute(new Runnable() {
+          public void run() {
+            int n;
+            byte buf[] = new byte[8192];
+            while ((n = next.getAndIncrement()) < urls.length) {
+              long t0 = System.nanoTime(), got = 0;
+              try {
+                java.net.HttpURLConnection con = (java.net.HttpURLConnection)new java.net.URL(urls[n]).openConnection();
+                InputStream in = con.getInputStream();
+                for (int k; (k = in.read(buf)) > 0; ) got += k;
+                in.close();
+              } catch (IOException e) {
+                System.out.println(urls[n] + ": " + e);
+              }
+              latency[n] = System.nanoTime() - t0;
+              synchronized (bytes) {
+                bytes[0] += got;
+              }
+            }
+          }
+        });
+      }
+      pool.shutdown();
+      pool.awaitTermination(1, java.util.concurrent.TimeUnit.HOURS);
+      t = System.nanoTime() - t;
+      java.util.Arrays.sort(latency);
+      System.out.println((pass == 0 ? "cold" : "warm") + "  "
+                         + String.format("%.1f", requests*1e9/t) + "  "
+                         + String.format("%.1f", latency[requests/2]/1e6) + "  "
+                         + String.format("%.1f", latency[requests*99/100]/1e6) + "  "
+                         + String.format("%.1f", latency[requests - 1]/1e6) + "  "
+                         + bytes[0]/requests);
+    }
+    System.out.println(server.cacheStats());
+    server.stop();
+  }  // benchTiles
+
+  static void benchAuto() throws IOException
+  {
+    // cold (empty cell cache) and warm renders of views
+    // 360 down to 0.35 degrees wide.
+    double widths[] = {360, 90, 22.5, 5.6, 1.4, 0.35};
+    float lon = 10, lat = 56;
+    BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics g = img.getGraphics();
+
+    System.out.println("width deg  px/deg  mode  res  cold ms  warm ms");
+    for (int w = 0; w < widths.length; w++) {
+      float half = (float)widths[w]/2;
+      for (int i = 0; i <= res.length; i++) {
+        int r = (i == res.length) ? rangs.AUTO : res[i];
+        if (r != rangs.AUTO && open(r, true) == null) continue;
+        rangs map = new rangs(dir, r);
+        map.setSize(width, height);
+        map.setView(lon - half, Math.min(lat + half/2, 89), lon + half, Math.max(lat - half/2, -89));
+        long t = System.nanoTime();
+        map.drawRANGS(g);
+        long cold = System.nanoTime() - t;
+        t = System.nanoTime();
+        map.drawRANGS(g);
+        long warm = System.nanoTime() - t;
+        System.out.println(widths[w] + "  " + String.format("%.1f", width/widths[w]) + "  "
+                           + (r == rangs.AUTO ? "auto " : "fixed") + "  " + map.getResolution()
+                           + "  " + cold/1000000 + "  " + warm/1000000);
+        map.closeRANGSFiles();
+      }
+    }
+    g.dispose();
+  }  // benchAuto
+
+  static void benchFlip() throws IOException
+  {
+    // each resolution twice over, on one map: the second
+    // round should find every cell in the cache.
+    rangs map = new rangs(dir, res[0]);
+    System.out.println("round  res  ms  cache so far");
+    for (int k = 0; k < 2; k++) {
+      for (int i = 0; i < res.length; i++) {
+        map.setResolution(res[i]);
+        System.out.println(k + "  " + res[i] + "  " + renderWorld(map)/1000000 + "  " + map.cacheStats());
+      }
+    }
+    map.closeRANGSFiles();
+  }  // benchFlip
+
+  static void benchProgressive() throws Exception
+  {
+    // each view on a new map, so nothing is cached.
+    float views[][] = {{0, 89, 359, -89}, {340, 70, 40, 35}, {5, 59, 15, 53}};
+    String names[] = {"world ", "europe", "denmark"};
+    final BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+    System.out.println("view  res  mode  first ms  final ms");
+    for (int round = 0; round < 2; round++) // the first warms up the JIT
+    for (int v = 0; v < views.length; v++) {
+      for (int i = 0; i < res.length; i++) {
+        if (open(res[i], true) == null) continue;
+        for (int p = 1; p >= 0; p--) {
+          final rangs map = new rangs(dir, res[i]);
+          map.setProgressive(p == 1);
+          map.setSize(width, height);
+          map.setView(views[v][0], views[v][1], views[v][2], views[v][3]);
+          javax.swing.SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+              Graphics g = img.getGraphics();
+              map.paintComponent(g);
+              g.dispose();
+            }
+          });
+          while (map.timeToFinalFrame() < 0) Thread.sleep(1);
+          if (round == 1) System.out.println(names[v] + "  " + res[i] + "  " + (p == 1 ? "coarse first" : "straight    ")
+                             + "  " + map.timeToFirstPixel() + "  " + map.timeToFinalFrame());
+          map.closeRANGSFiles();
+        }
+      }
+    }
+  }  // benchProgressive
+
+  static void benchPan() throws Exception
+  {
+    // Europe on one map, panned back and forth so the cells
+    // stay in the cache.
+    String names[] = {"scroll 1/4", "drag 10 px"};
+    int steps[] = {width/4, 10};
+
+    System.out.println("res  pan  mode  mean ms  best ms  pixels off");
+    for (int round = 0; round < 2; round++) // the first warms up the JIT
+    for (int i = 0; i < res.length; i++) {
+      if (open(res[i], true) == null) continue;
+      rangs map = new rangs(dir, res[i]);
+      map.setProgressive(false);
+      map.setSize(width, height);
+      map.setView(340, 70, 40, 35);
+      paintAndWait(map);
+      for (int k = 0; k < steps.length; k++)
+        for (int inc = 0; inc < 2; inc++) {
+          map.setIncremental(inc == 1);
+          long sum = 0, best = Long.MAX_VALUE;
+          int n = 20;
+          for (int p = 0; p < n; p++) {
+            map.pan((p & 1) == 0 ? -steps[k] : steps[k], 0);
+            long t = paintAndWait(map);
+            sum += t;
+            best = Math.min(best, t);
+          }
+          if (round == 1) System.out.println(res[i] + "  " + names[k] + "  " + (inc == 1 ? "shifted" : "full   ")
+                                             + "  " + String.format("%.2f", sum/1e6/n)
+                                             + "  " + String.format("%.2f", best/1e6) + "  " + pixelsOff(map));
+        }
+      map.closeRANGSFiles();
+    }
+  }  // benchPan
+
+  static void benchWheel() throws Exception
+  {
+    // the same spin in and back out, so the cells of both
+    // ends are cached after the first.
+    final int ticks = 10;
+    final BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+    System.out.println("res  direction  ticks  paint mean ms  paint max ms  map ms  after last tick ms  map each tick ms");
+    for (int round = 0; round < 2; round++) // the first warms up the JIT
+    for (int i = 0; i < res.length; i++) {
+      if (open(res[i], true) == null) continue;
+      final rangs map = new rangs(dir, res[i]);
+      map.setSize(width, height);
+      map.setView(340, 70, 40, 35);
+      paintAndWait(map);
+      for (int way = -1; way <= 1; way += 2) {
+        final double tick = way;
+        final long paint[] = new long[ticks];
+        long each = 0;
+
+        // a map drawn for each tick, as the zoom buttons do.
+        for (int k = 0; k < ticks; k++) {
+          map.zoomAt(width/2 + width/16, height/2 - height/8, tick);
+          Thread.sleep(150);
+          each += paintAndWait(map);
+        }
+        for (int k = 0; k < ticks; k++) map.zoomAt(width/2 + width/16, height/2 - height/8, -tick);
+        Thread.sleep(150);
+        paintAndWait(map);
+
+        // one spin: the ticks as fast as the wheel sends them.
+        javax.swing.SwingUtilities.invokeAndWait(new Runnable() {
+          public void run() {
+            for (int k = 0; k < ticks; k++) {
+              map.zoomAt(width/2 + width/16, height/2 - height/8, tick);
+              Graphics g = img.getGraphics();
+              long t = System.nanoTime();
+              map.paintComponent(g);
+              paint[k] = System.nanoTime() - t;
+              g.dispose();
+            }
+          }
+        });
+        long last = System.nanoTime(), sum = 0, max = 0;
+        while (map.finalFrameNanos() < 0) {
+          // there is no screen to repaint it: paint it here.
+          javax.swing.SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+              Graphics g = img.getGraphics();
+              map.paintComponent(g);
+              g.dispose();
+            }
+          });
+          Thread.sleep(1);
+        }
+        long after = System.nanoTime() - last;
+        for (int k = 0; k < ticks; k++) {
+          sum += paint[k];
+          max = Math.max(max, paint[k]);
+        }
+        if (round == 1) System.out.println(res[i] + "  " + (way < 0 ? "in " : "out") + "  " + ticks
+                                           + "  " + String.format("%.2f", sum/1e6/ticks)
+                                           + "  " + String.format("%.2f", max/1e6)
+                                           + "  " + String.format("%.1f", map.finalFrameNanos()/1e6)
+                                           + "  " + String.format("%.1f", after/1e6)
+                                           + "  " + String.format("%.1f", each/1e6));
+      }
+      map.closeRANGSFiles();
+    }
+  }  // benchWheel
+
+  static long paintAndWait(final rangs map) throws Exception
+  {
+    // asks map for its view through paintComponent, as the
+    // screen would, and waits for it to be finished.
+    final BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    javax.swing.SwingUtilities.invokeAndWait(new Runnable() {
+      public void run() {
+        Graphics g = img.getGraphics();
+        map.paintComponent(g);
+        g.dispose();
+      }
+    });
+    while (map.finalFrameNanos() < 0) Thread.sleep(0, 100000);
+    return map.finalFrameNanos();
+  }  // paintAndWait
+
+  static int pixelsOff(final rangs map) throws Exception
+  {
+    // pixels of the map on screen unlike a straight render.
+    final BufferedImage shown = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    BufferedImage straight = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    javax.swing.SwingUtilities.invokeAndWait(new Runnable() {
+      public void run() {
+        Graphics g = shown.getGraphics();
+        map.paintComponent(g);
+        g.dispose();
+      }
+    });
+    Graphics g = straight.getGraphics();
+    g.setColor(map.getBackground());
+    g.fillRect(0, 0, width, height);
+    map.drawRANGS(g);
+    g.dispose();
+    int n = 0;
+    for (int y = 0; y < height; y++)
+      for (int x = 0; x < width; x++)
+        if (shown.getRGB(x, y) != straight.getRGB(x, y)) n++;
+    return n;
+  }  // pixelsOff
+
+  static void benchDecimate() throws IOException
+  {
+    // views around Denmark, 360 down to 1.4 degrees wide.
+    double widths[] = {360, 90, 22.5, 5.6, 1.4};
+    int tolerances[] = {-1, 0, 1, 2};
+    double lon = 10, lat = 56;
+    BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics g = img.getGraphics();
+
+    System.out.println("res  width deg  tolerance  points in  points drawn  kept  ms");
+    for (int i = 0; i < res.length; i++) {
+      RANGSData d = open(res[i], true);
+      if (d == null) continue;
+      HeadlessMap map = new HeadlessMap(d);
+      for (int w = 0; w < widths.length; w++) {
+        double half = widths[w]/2;
+        Viewport view = new Viewport(lon - half, Math.min(lat + half/2, 90), lon + half,
+                                     Math.max(lat - half/2, -90), 0, 0, width, height);
+        for (int k = 0; k < tolerances.length; k++) {
+          RenderContext rc = null;
+          long best = Long.MAX_VALUE;
+          for (int r = 0; r < 4; r++) { // the first fills the cache
+            rc = new RenderContext(view, HeadlessMap.detailFlags(3, true), defaultColors(map));
+            rc.setTolerance(tolerances[k]);
+            long t = System.nanoTime();
+            drawView(map, rc, view, g);
+            best = Math.min(best, System.nanoTime() - t);
+          }
+          System.out.println(res[i] + "  " + widths[w] + "  " + (tolerances[k] < 0 ? "off" : "" + tolerances[k])
+                             + "  " + rc.pointsIn() + "  " + rc.pointsOut()
+                             + "  " + String.format("%.1f%%", 100.0*rc.pointsOut()/Math.max(1, rc.pointsIn()))
+                             + "  " + String.format("%.1f", best/1e6));
+        }
+      }
+      d.close();
+    }
+    g.dispose();
+  }  // benchDecimate
+
+  static Color[] defaultColors(HeadlessMap map)
+  {
+    Color c[] = new Color[8];
+    for (int i = 0; i < c.length; i++) c[i] = map.getColor(i);
+    return c;
+  }  // defaultColors
+
+  static void drawView(HeadlessMap map, RenderContext rc, Viewport view, Graphics g) throws IOException
+  {
+    // the cells HeadlessMap.drawBox would draw for view.
+    double west = view.lon(0), east = view.lon(width), north = view.lat(0), south = view.lat(height);
+    for (int i = (int)Math.ceil(north) - 1; i >= (int)Math.floor(south); i--) {
+      if (i > 89 || i < -90) continue;
+      for (int j = (int)Math.floor(west); j < (int)Math.ceil(east); j++) {
+        int ix = ((j % 360) + 360) % 360;
+        rc.drawCell(map.getCell(ix, i), j - ix, g);
+      }
+    }
+  }  // drawView
+
+  static void benchZip() throws IOException
+  {
+    // zip against loose files, for each rangsN.zip in dir
+    // or dir/rangs.
+    System.out.println("res  source  open ms  inflated bytes  first pass ms  second pass ms  cells  skipped");
+    for (int i = 0; i < res.length; i++) {
+      File zip = RANGSData.zipFile(dir, res[i]);
+      if (zip == null) continue;
+
+      // the loose files, extracted next to a copy of the
+      // zip, so both find the same rim file.
+      File tmp = File.createTempFile("rangs", "");
+      tmp.delete();
+      tmp.mkdir();
+      File rim = new File(dir, "gshhs(" + res[i] + ").rim"), copy = new File(tmp, zip.getName());
+      copyFile(zip, copy);
+      if (rim.exists()) copyFile(rim, new File(tmp, rim.getName()));
+      else new FileOutputStream(new File(tmp, rim.getName())).close();
+      java.util.zip.ZipFile z = new java.util.zip.ZipFile(zip);
+      for (java.util.Enumeration<? extends java.util.zip.ZipEntry> e = z.entries(); e.hasMoreElements(); ) {
+        java.util.zip.ZipEntry en = e.nextElement();
+        copyStream(z.getInputStream(en), new File(tmp, en.getName()));
+      }
+      z.close();
+
+      for (int m = 0; m < 2; m++) {
+        long t = System.nanoTime();
+        RANGSData d = (m == 0) ? new ZipRANGSData(res[i], copy) : RANGSData.open(tmp, res[i], true);
+        long open = System.nanoTime() - t;
+        long first[] = decodeAll(d), second[] = decodeAll(d);
+        System.out.println(res[i] + "  " + (m == 0 ? "zip  " : "loose") + "  " + String.format("%.1f", open/1e6)
+                           + "  " + (m == 0 ? ((ZipRANGSData)d).inflated() : 0)
+                           + "  " + first[0]/1000000 + "  " + second[0]/1000000
+                           + "  " + first[1] + "  " + first[2]);
+        d.close();
+      }
+      File f[] = tmp.listFiles();
+      for (int k = 0; k < f.length; k++) f[k].delete();
+      tmp.delete();
+    }
+  }  // benchZip
+
+  static long[] decodeAll(RANGSData d)
+  {
+    // decodes every cell; returns the time, the cells
+    // decoded and the cells that needed a missing rim file.
+    long t = System.nanoTime(), n = 0, skipped = 0;
+    for (int iy = 89; iy >= -90; iy--) {
+      for (int ix = 0; ix < 360; ix++) {
+        try {
+          d.decodeCell(ix, iy);
+          n++;
+        } catch (IOException e) {
+          skipped++;
+        } catch (IndexOutOfBoundsException e) {
+          skipped++;  // the empty stand in rim file
+        }
+      }
+    }
+    return new long[] {System.nanoTime() - t, n, skipped};
+  }  // decodeAll
+
+  static void copyFile(File from, File to) throws IOException {
+    copyStream(new FileInputStream(from), to);
+  }
+
+  static void copyStream(InputStream in, File to) throws IOException
+  {
+    OutputStream o = new FileOutputStream(to);
+    byte b[] = new byte[65536];
+    int n;
+    try {
+      while ((n = in.read(b)) > 0) o.write(b, 0, n);
+    } finally {
+      in.close();
+      o.close();
+    }
+  }  // copyStream
+
+  static void benchPacific() throws IOException
+  {
+    // open ocean, Hawaii to the Line Islands, and the world.
+    float views[][] = {{180, 25, 220, -5}, {0, 89, 359, -89}};
+    String names[] = {"pacific", "world  "};
+
+    System.out.println("res  view  uniform fill  classify ms  cold ms  warm ms  cells decoded");
+    for (int i = 0; i < res.length; i++) {
+      for (int v = 0; v < views.length; v++) {
+        for (int u = 0; u < 2; u++) {
+          RANGSData d = open(res[i], true);
+          if (d == null) break;
+          long t = System.nanoTime();
+          d.classify();
+          long classify = System.nanoTime() - t;
+          HeadlessMap map = new HeadlessMap(d);
+          map.setUniformFill(u == 1);
+          float b[] = views[v];
+          t = System.nanoTime();
+          map.render(b[0], b[1], b[2], b[3], width, height);
+          long cold = System.nanoTime() - t;
+          String stats = map.cacheStats();
+          long warm = Long.MAX_VALUE;
+          for (int r = 0; r < 3; r++) {
+            t = System.nanoTime();
+            map.render(b[0], b[1], b[2], b[3], width, height);
+            warm = Math.min(warm, System.nanoTime() - t);
+          }
+          System.out.println(res[i] + "  " + names[v] + "  " + (u == 1 ? "on " : "off")
+                             + "  " + String.format("%.1f", classify/1e6)
+                             + "  " + String.format("%.1f", cold/1e6) + "  " + String.format("%.1f", warm/1e6)
+                             + "  " + stats.substring(stats.indexOf("misses") + 7, stats.indexOf(" hit rate")));
+          d.close();
+        }
+      }
+    }
+  }  // benchPacific
+
+}
@@ -18,7 +18,6 @@ import java.awt.event.*;
 import java.io.*;
 import javax.swing.*;
 import javax.swing.event.*;
-import java.lang.reflect.*;
 import java.util.*;
 import java.awt.image.*;
 import java.awt.print.*;
@@ -29,19 +28,20 @@ public class rangs extends JPanel implements Printable {
   // default coordinates
   private float lon1 = 348, lat1 = 60, lon2 = 5, lat2 = 48; // GBR & IRL
   private int resolution = 3; // map resolution 0 = highest, 4 = lowest
-  // don't touch these
-  private boolean firstFill = true, firstShore = true;
-
+  public static final int AUTO = -1; // setResolution: pick one for the scale
+  private boolean autoResolution = false;
+  private double autoPixels = 2; // in auto, points at most this many pixels apart
+  private double lodPixels = 1;  // simplified cells at most this many pixels off; 0 never
   private int flags; // for level of detail
 
-  private RandomAccessFile hCEL, hCAT, hRIM;  // files that hold the map data
+  // files that hold the map data, every resolution, and
+  // the decoded cells of all of them within one budget.
+  // Safe to share: several maps, and print jobs and
+  // HeadlessMaps, can draw from one store at once.
+  private RANGSStore store;
+  private boolean ownStore = true;  // closed with the map
 
-  // internal drawing variables
-  private Color clr; // the current drawing color
-  private int fillPixels = 0, shorePixels = 0;  // indexes into point arrays
-  private int opcode; 
-  private Point fillPixel[] = new Point[16384], shorePixel[] = new Point[16384];
-  private double x0Fill = 0, y0Fill = 0, x0Shore = 0, y0Shore = 0; 
+  private int tolerance = 0; // pixels; points closer to the last are not drawn
   private boolean fillmap = true;
   private Color mapColor[] = new Color[8];
 
@@ -51,16 +51,45 @@ public class rangs extends JPanel implements Printable {
   // used for click & drag rectangle handling
   private Rectangle currentRect, rectToDraw, previousRectDrawn = new Rectangle();
 
-  // file caches for speed.
-  private Cache catCache = new Cache(32768);
-  // celCache holds Integer objects
-  private Cache celCache = new Cache(65536);
-  // celCache2 holds Point objects
-  private Cache celCache2 = new Cache(65536);
-  private Cache rimCache = new Cache(32768);
-  // virtual file pointers to keep cache accesses and file accesses in synch.
-  private long celPos = 0, catPos = 0, rimPos = 0;
-  private boolean useCatCache = true, useCelCache = true, useRimCache = true;
+  // background rendering.  The map is drawn into an image
+  // off the event thread; paintComponent shows the last
+  // finished one, scaled if the view has moved since, and
+  // draws the selection rectangle over it.  The image is
+  // only redrawn after mapChanged() or viewChanged().
+  private MapFrame shown;            // on screen, event thread only
+  private MapFrame lastDrawn;        // last map finished, renderer only
+  private MapFrame wanted, pending;  // latest asked for, not yet started
+  private Vector<BufferedImage> spares = new Vector<BufferedImage>(); // images of frames shown before
+  private Object renderLock = new Object();
+  private volatile int generation = 0; // bumped to cancel a render
+  private int version = 0;  // bumped when detail, resolution or colors change
+  private MapRenderer renderer;
+
+  // the background render splits the map into bands of
+  // rows, drawn in parallel into strips of image, on a
+  // pool all maps share.
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private static java.util.concurrent.ForkJoinPool bandPool;
+
+  // progressive rendering: a map at a fine resolution is
+  // first drawn from the coarsest one, shown, then redrawn
+  // row by row at its own resolution.  Times are from the
+  // view being asked for to its first and last pictures
+  // going on screen, in nanoseconds.
+  private boolean progressive = true;
+  private volatile long firstPixelTime = -1, finalFrameTime = -1;
+  private MapFrame timed;  // the frame the times are for
+
+  // a map panned by whole pixels is the last one drawn
+  // shifted along, with only the strips uncovered drawn.
+  private boolean incremental = true;
+
+  // wheel zoom: ticks less than WHEEL_QUIET ms apart make
+  // one zoom.  Until they stop, the map on screen is only
+  // stretched over the new view, and nothing is drawn.
+  private static final int WHEEL_QUIET = 100;
+  private javax.swing.Timer wheelTimer;
+  private boolean zooming = false;  // event thread only
 
 
   public rangs(rangsFrame pApp)
@@ -70,12 +99,8 @@ public class rangs extends JPanel implements Printable {
     */
     super();
     parent = pApp;
-    // lazy way to do this, vector would be nicer.
-    for ( int i = 0; i < 16384; i++) {
-      fillPixel[i] = new Point();
-      shorePixel[i] = new Point();
-    }
     setPreferredSize(new Dimension(800, 300) );
+    store = new RANGSStore(new File("."), 64L << 20);
 
     if (openRANGSFiles() == 0)
       {  
@@ -85,11 +110,50 @@ public class rangs extends JPanel implements Printable {
     MyListener myListener = new MyListener();
     addMouseListener(myListener);
     addMouseMotionListener(myListener);
+    addMouseWheelListener(myListener);
     setDetail(3);  // max detail, fill
     initColors();
     parent.updateLatLon(lat1, lon1, lat2, lon2);
   } // c'tor
 
+  rangs(int res, RANGSData d)
+  {
+    /* Constructor for a map with no frame around it,
+    ** drawing from already opened data.  Used by rangsBench.
+    */
+    super();
+    resolution = res;
+    store = new RANGSStore(d, 64L << 20);
+    setDetail(3);
+    initColors();
+  } // c'tor
+
+  rangs(RANGSStore s, int res)
+  {
+    /* Constructor for a map with no frame around it,
+    ** drawing from a store other maps may share.  Closing
+    ** the map leaves the store open.
+    */
+    super();
+    store = s;
+    ownStore = false;
+    setResolution(res);
+    setDetail(3);
+    initColors();
+  } // c'tor
+
+  rangs(File dir, int res)
+  {
+    /* Constructor for a map with no frame around it,
+    ** reading the files in dir.  Used by rangsBench.
+    */
+    super();
+    store = new RANGSStore(dir, 64L << 20);
+    setResolution(res);
+    setDetail(3);
+    initColors();
+  } // c'tor
+
   public rangs(int ln1, int lt1, int ln2, int lt2, rangsFrame pApp)
   {
     // Constructor, with longitude and latitude specified.
@@ -111,9 +175,10 @@ public class rangs extends JPanel implements Printable {
       double scaleFactor = Math.max((double)(getSize().width)/(double)(pageFormat.getImageableWidth()),(double)(getSize().height)/(double)(pageFormat.getImageableHeight()));
       g2d.translate(pageFormat.getImageableX(), pageFormat.getImageableY());
       g2d.scale(1.0/scaleFactor,1.0/scaleFactor);
-      disableDoubleBuffering(this);
-      paint(g2d);
-      enableDoubleBuffering(this);
+      // draw straight onto the page, not the screen image.
+      g2d.setColor(getBackground());
+      g2d.fillRect(0, 0, getWidth(), getHeight());
+      drawRANGS(g2d);
       return(PAGE_EXISTS);
     }
   }
@@ -144,43 +209,51 @@ public class rangs extends JPanel implements Printable {
   class MyListener extends MouseInputAdapter {
   // Handler for all mouse activities on the map.
     private boolean clicking = true;
+    private boolean panning = false;  // dragging the map, not a rectangle
+    private int lastX, lastY;         // where the drag was last
 
     public void mouseClicked(MouseEvent e) {
       // centers map on point clicked
       clicking = true;
-      float width, height, x, y;
-      width = Math.abs(lon2 - lon1);  // keep same aspect ratio
-      height = Math.abs(lat1 - lat2);
-      x = lon1 + e.getX()*(width/getWidth());
-      y = lat1 - e.getY()*(height/getHeight());
-      lon1 = x - width/2;
-      lon2 = x + width/2;
-      lat1 = y + height/2;
-      lat2 = y - height/2;
-      if (lat1 > 89) lat1 = 89;
-      if (lat2 < -89) lat2 = -89;
-      parent.updateStatus(" Centering on " + parent.printLat((double)y) + ":" + parent.printLon((double)x) + ".");
-      parent.updateLatLon(lat1, lon1, lat2, lon2);
-      repaint();
+      Viewport v = makeViewport();
+      double x = v.lon(e.getX()), y = v.lat(e.getY());
+      parent.updateStatus(" Centering on " + parent.printLat(y) + ":" + parent.printLon(x) + ".");
+      pan(getWidth()/2 - e.getX(), getHeight()/2 - e.getY());
     }
     
     public void mousePressed(MouseEvent e) {
-      // start of selecting a region
+      // start of selecting a region, or with the right or
+      // middle button or shift held, of dragging the map.
       clicking = true;
       int x = e.getX();
       int y = e.getY();
+      panning = !SwingUtilities.isLeftMouseButton(e) || e.isShiftDown();
+      lastX = x;
+      lastY = y;
+      if (panning) return;
       currentRect = new Rectangle(x, y, 0, 0);
       updateDrawableRect(getWidth(), getHeight());
     }
 
     public void mouseDragged(MouseEvent e) {
-      // update the dragging rectangle
+      // update the dragging rectangle, or move the map
+      // along with the mouse.
       clicking = false;
+      if (panning) {
+        pan(e.getX() - lastX, e.getY() - lastY);
+        lastX = e.getX();
+        lastY = e.getY();
+        return;
+      }
       updateSize(e);
     }
 
     public void mouseReleased(MouseEvent e) {
       // zoom to selected region.
+      if (panning) {
+        panning = false;
+        return;
+      }
       if (!clicking) {
 	parent.updateStatus(" Zooming to selected rectangle."); 
 	updateSize(e);
@@ -198,10 +271,15 @@ public class rangs extends JPanel implements Printable {
 	lat2 = lt2;
 	parent.updateLatLon(lat1, lon1, lat2, lon2);
         currentRect = null;
-	repaint();
+	mapChanged();
       }
     }
 
+    public void mouseWheelMoved(MouseWheelEvent e) {
+      // zooms in or out around the point under the mouse.
+      zoomAt(e.getX(), e.getY(), e.getPreciseWheelRotation());
+    }
+
     void updateSize(MouseEvent e) {
       // does the update of the dragging rectangle
       int x = e.getX();
@@ -268,37 +346,629 @@ public class rangs extends JPanel implements Printable {
 
 
   public void paintComponent(Graphics g) {
-    super.paintComponent(g);
-    // paint the map
-    drawRANGS(g);
+    // paint the last map drawn, and ask for a new one
+    // if the map has changed.
+    MapFrame f = wanted;
+    Viewport v;
+    fixView();  // the zoom and stretch routines expect it done
+    if (zooming) {
+      // the wheel is still turning: stretch, don't draw.
+      v = makeViewport();
+    }
+    else {
+      if (f == null || f.width != getWidth() || f.height != getHeight()) f = requestRender();
+      v = f.view;
+    }
+    if (shown != null && shown.view == v) {
+      // this view, maybe still being refined.
+      synchronized (shown.image) {
+        g.drawImage(shown.image, 0, 0, null);
+      }
+    }
+    else {
+      super.paintComponent(g);
+      if (shown != null) {
+        // stretch the old map over where it now lies.
+        Viewport old = shown.view;
+        synchronized (shown.image) {
+          g.drawImage(shown.image,
+                      v.x(old.lon(0)), v.y(old.lat(0)),
+                      v.x(old.lon(shown.width)), v.y(old.lat(shown.height)),
+                      0, 0, shown.width, shown.height, null);
+        }
+      }
+    }
     // if we're dragging a rectangle, paint it too.
     if (currentRect != null) {
       g.setColor(Color.white);
       g.drawRect(rectToDraw.x, rectToDraw.y, rectToDraw.width-1, rectToDraw.height-1);
     }
-
-    parent.updateStatus(" Click on the map to center at that point.");
   }  // paintComponent
 
+  private void mapChanged()
+  {
+    // the view, detail, resolution or colors changed, so
+    // the map image is out of date.
+    version++;
+    cancelRender();
+    repaint();
+  }  // mapChanged
 
-  public synchronized int drawRANGS(Graphics g)
+  private void viewChanged()
+  {
+    // only the view moved: the map image can be shifted
+    // along if the scale is the same.
+    cancelRender();
+    repaint();
+  }  // viewChanged
+
+
+  public int drawRANGS(Graphics g)
   {
     /* draws the map defined by the box having
     ** coordinates lat1/lon1, lat2/lon2
     */
+    drawRANGS(g, new MapFrame(), -1);
+    return(-1);
+  }  // drawRANGS
+
+  boolean drawRANGS(Graphics g, int nThreads)
+  {
+    // draws the map as it is now on nThreads threads.
+    return drawRANGS(g, new MapFrame(), -1, nThreads);
+  }  // drawRANGS
+
+  private boolean drawRANGS(Graphics g, MapFrame f, int gen)
+  {
+    /* draws the map as it was when f was taken.  Gives up,
+    ** returning false, as soon as generation moves on
+    ** from gen; gen == -1 never gives up.
+    **
+    ** Everything a render reads is in f or its own
+    ** RenderContext, and the store is safe to share, so
+    ** renders need no lock: the background renderer, a
+    ** print job and other maps on the same store can all
+    ** draw at once.
+    */
+    if (f.data == null) return true;
+    return drawRows(g, f, newContext(f),
+                    (int)Math.ceil((double)f.lat1), (int)Math.floor((double)f.lat2), gen);
+  }  // drawRANGS
+
+  boolean drawRANGS(Graphics g, MapFrame f, int gen, int nThreads)
+  {
+    /* draws the map as drawRANGS(g, f, gen) does, but on
+    ** nThreads threads: the rows of cells are cut into
+    ** bands, each band is drawn into its own strip of image
+    ** with its own render context, and the strips are then
+    ** drawn onto g from north to south, the order the rows
+    ** would have been drawn in one at a time.  The strips
+    ** are transparent except where cells were drawn, so
+    ** the picture comes out the same.
+    */
+    return drawBands(g, f, gen, nThreads, Math.min((int)Math.ceil((double)f.lat1), 89),
+                     Math.max((int)Math.floor((double)f.lat2), -90));
+  }  // drawRANGS
+
+  private boolean drawBands(Graphics g, MapFrame f, int gen, int nThreads,
+                           int north, int south)
+  {
+    // draws rows north down to south of f in parallel
+    // bands, as drawRANGS(g, f, gen, nThreads) does.
+    int rows = north - south + 1;
+    if (f.data == null) return true;
+    if (nThreads <= 1 || rows < 2 || f.width <= 0 || f.height <= 0)
+      return drawRows(g, f, newContext(f), north, south, gen);
+
+    int nBands = Math.min(rows, 4*nThreads);
+    BandTask t = new BandTask(f, gen, north, rows, nBands);
+    bandPool(nThreads).invoke(t);
+    for (int b = 0; b < nBands; b++) {
+      if (t.strips[b] == null) return false; // cancelled
+      g.drawImage(t.strips[b], 0, t.stripY[b], null);
+    }
+    return true;
+  }  // drawBands
+
+  private RenderContext newContext(MapFrame f)
+  {
+    // a context to draw f with, as things were when f was
+    // taken.
+    RenderContext rc = new RenderContext(f.view, f.flags, f.colors);
+    rc.setTolerance(f.tolerance);
+    return rc;
+  }  // newContext
+
+  public void setTolerance(int px)
+  {
+    /* points no more than px pixels from the last one
+    ** drawn, across and down, are left out.  0 leaves out
+    ** only points on the same pixel, -1 none.
+    */
+    if (px != tolerance) {
+      tolerance = px;
+      mapChanged();
+    }
+  }  // setTolerance
+
+  private boolean drawRows(Graphics g, MapFrame f, RenderContext rc, int north, int south, int gen)
+  {
+    // draws rows north down to south of the map f.
+    return drawRows(g, f, rc, north, south,
+                    (int)Math.floor((double)f.lon1), (int)Math.ceil((double)f.lon2), gen);
+  }  // drawRows
+
+  private boolean drawRows(Graphics g, MapFrame f, RenderContext rc, int north, int south,
+                           int west, int east, int gen)
+  {
+    // draws columns west to east of rows north down to
+    // south of the map f.
     int i, j;
 
+    for (i = north; i >= south; i--) {
+      for (j = west; j <= east; j++) {
+	if (gen != -1 && gen != generation) return false;
+	drawRANGSCell(f.data, f.level, i, j, rc, g);
+      }
+    }
+    rc.flush(g);
+    return true;
+  }  // drawRows
+
+  private static synchronized java.util.concurrent.ForkJoinPool bandPool(int nThreads)
+  {
+    /* the pool bands are drawn on, remade if the number of
+    ** threads changes.  The old one is not shut down, as
+    ** another render may be about to use it; its threads
+    ** die off once idle.
+    */
+    if (bandPool == null || bandPool.getParallelism() != nThreads)
+      bandPool = new java.util.concurrent.ForkJoinPool(nThreads);
+    return bandPool;
+  }  // bandPool
+
+  void setThreads(int n)
+  {
+    // threads the background render draws with.
+    threads = Math.max(1, n);
+  }  // setThreads
+
+  public void setProgressive(boolean p)
+  {
+    // draw a coarse map first while the fine one is drawn.
+    progressive = p;
+  }  // setProgressive
+
+  public long timeToFirstPixel()
+  {
+    // milliseconds from asking for the last map drawn to
+    // the first picture of it on screen; -1 if none yet.
+    long t = firstPixelTime;
+    return t < 0 ? -1 : t/1000000;
+  }  // timeToFirstPixel
+
+  public long timeToFinalFrame()
+  {
+    // milliseconds from asking for the last map drawn to
+    // the finished map on screen; -1 if none yet.
+    long t = finalFrameTime;
+    return t < 0 ? -1 : t/1000000;
+  }  // timeToFinalFrame
+
+  long finalFrameNanos()
+  {
+    // as timeToFinalFrame, in nanoseconds.
+    return finalFrameTime;
+  }  // finalFrameNanos
+
+  public void setIncremental(boolean i)
+  {
+    // shift the last map along when panning, drawing only
+    // what comes into view; false redraws all of it.
+    incremental = i;
+  }  // setIncremental
+
+  @SuppressWarnings("serial")  // never serialized
+  class BandTask extends java.util.concurrent.RecursiveAction {
+    /* Draws bands lo..hi-1 of a map, splitting in half
+    ** until one band is left.  Band b holds rows
+    ** north - b*rows/nBands down to just above the next
+    ** band's; its strip covers the pixel rows those cells
+    ** can touch.  All tasks of one map share the arrays.
+    */
+    MapFrame f;
+    int gen, north, rows, nBands, lo, hi;
+    BufferedImage strips[];
+    int stripY[];
+
+    BandTask(MapFrame f, int gen, int north, int rows, int nBands) {
+      this.f = f;
+      this.gen = gen;
+      this.north = north;
+      this.rows = rows;
+      this.nBands = nBands;
+      lo = 0;
+      hi = nBands;
+      strips = new BufferedImage[nBands];
+      stripY = new int[nBands];
+    }
+
+    BandTask(BandTask parent, int lo, int hi) {
+      f = parent.f;
+      gen = parent.gen;
+      north = parent.north;
+      rows = parent.rows;
+      nBands = parent.nBands;
+      strips = parent.strips;
+      stripY = parent.stripY;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    protected void compute() {
+      if (hi - lo > 1) {
+        int mid = (lo + hi) >>> 1;
+        invokeAll(new BandTask(this, lo, mid), new BandTask(this, mid, hi));
+        return;
+      }
+      int top = north - lo*rows/nBands, bottom = north - (lo + 1)*rows/nBands + 1;
+      // a cell at row i lies between latitudes i and i+1.
+      int y0 = Math.max(f.view.y(top + 1) - 1, 0);
+      int y1 = Math.min(f.view.y(bottom) + 2, f.height);
+      if (y1 <= y0) {
+        strips[lo] = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        return;
+      }
+      BufferedImage img = new BufferedImage(f.width, y1 - y0, BufferedImage.TYPE_INT_ARGB);
+      Graphics g = img.getGraphics();
+      g.translate(0, -y0);
+      boolean done = drawRows(g, f, newContext(f), top, bottom, gen);
+      g.dispose();
+      if (done) {
+        strips[lo] = img;
+        stripY[lo] = y0;
+      }
+    }
+  }  // end inner class BandTask
+
+  private void fixView()
+  {
+    // keeps lon1 west of lon2 and the map at least a
+    // little wide and tall.  Changes the view, so for the
+    // event thread only; a MapFrame does the same to its
+    // own copy.
     if (lon1 > lon2) lon1 -= 360;
     if (Math.abs(lat1-lat2) < 0.001) lat2 = lat1 - (float)0.001;
     if (Math.abs(lon1-lon2) < 0.001) lon2 = lon1 + (float)0.001;
-     
-    for (i = (int)Math.ceil((double)lat1); i >= (int)Math.floor((double)lat2); i--) {
-      for (j = (int)Math.floor((double)lon1); j <= (int)Math.ceil((double)lon2); j++) {
-	drawRANGSCell(i, j, g);
+  }  // fixView
+
+  private Viewport makeViewport()
+  {
+    return makeViewport(lon1, lat1, lon2, lat2);
+  }  // makeViewport
+
+  private Viewport makeViewport(float lon1, float lat1, float lon2, float lat2)
+  {
+    // maps the map corners onto the component, inside its
+    // border.  As always, the map takes in an extra degree
+    // east of lon2 and north of lat1.
+    Insets i = getInsets();
+    return new Viewport(lon1, lat1 + 1, lon2 + 1, lat2, i.left, i.top,
+                        getWidth() - i.left - i.right, getHeight() - i.top - i.bottom);
+  }  // makeViewport
+
+  private MapFrame requestRender()
+  {
+    /* Asks the renderer thread for the map as it is now,
+    ** unless that was the last thing asked for.  A render
+    ** still running for an older view is cancelled, and
+    ** requests made while it winds down collapse into the
+    ** latest one.  Returns the view asked for.
+    */
+    MapFrame f = new MapFrame();
+
+    synchronized (renderLock) {
+      if (wanted != null && wanted.sameAs(f)) return wanted;
+      wanted = pending = f;
+      generation++;
+      finalFrameTime = -1;
+      if (renderer == null) {
+        renderer = new MapRenderer();
+        renderer.start();
       }
+      renderLock.notify();
     }
-    return(-1);
-  }  // drawRANGS
+    return f;
+  }  // requestRender
+
+  private RANGSData coarsest()
+  {
+    // the coarsest resolution there is, for a first pass.
+    for (int r = RANGSData.RESOLUTIONS - 1; r >= 0; r--)
+      if (store.data(r) != null) return store.data(r);
+    return null;
+  }  // coarsest
+
+  private BufferedImage takeImage(MapFrame f)
+  {
+    // an image to draw f in: an old one if one fits, but
+    // never the last map drawn, which a pan is shifted from.
+    BufferedImage keep = (lastDrawn == null) ? null : lastDrawn.image;
+    synchronized (renderLock) {
+      for (int i = spares.size() - 1; i >= 0; i--) {
+        BufferedImage img = spares.elementAt(i);
+        if (img == keep) continue;
+        spares.removeElementAt(i);
+        if (img.getWidth() == f.width && img.getHeight() == f.height) return img;
+      }
+    }
+    return new BufferedImage(f.width, f.height, BufferedImage.TYPE_INT_RGB);
+  }  // takeImage
+
+  private void giveBack(BufferedImage img)
+  {
+    // keeps img for reuse; two are enough.
+    synchronized (renderLock) {
+      if (spares.size() < 2) spares.addElement(img);
+    }
+  }  // giveBack
+
+  private void cancelRender()
+  {
+    // stops any render in progress.
+    synchronized (renderLock) {
+      generation++;
+      finalFrameTime = -1;
+      pending = null;
+      wanted = null;
+    }
+  }  // cancelRender
+
+  class MapFrame {
+    // a snapshot of the view and the settings, and the map
+    // drawn for it.
+    float lon1, lat1, lon2, lat2;
+    int width, height, version;
+    int flags, tolerance;
+    Color colors[];
+    Viewport view;
+    RANGSData data;  // the resolution to draw with, null if none
+    int level;       // of its simplified cells, -1 for full
+    BufferedImage image;
+    long asked;      // System.nanoTime() when the view was taken
+    MapFrame fine;   // the frame a coarse first pass is for, or this
+
+    MapFrame() {
+      // the view as it is now, put right as fixView would
+      // but without touching the panel, so any thread can
+      // take one.
+      lon1 = rangs.this.lon1;
+      lat1 = rangs.this.lat1;
+      lon2 = rangs.this.lon2;
+      lat2 = rangs.this.lat2;
+      if (lon1 > lon2) lon1 -= 360;
+      if (Math.abs(lat1-lat2) < 0.001) lat2 = lat1 - (float)0.001;
+      if (Math.abs(lon1-lon2) < 0.001) lon2 = lon1 + (float)0.001;
+      width = getWidth();
+      height = getHeight();
+      version = rangs.this.version;
+      flags = rangs.this.flags;
+      tolerance = rangs.this.tolerance;
+      colors = mapColor.clone();
+      view = makeViewport(lon1, lat1, lon2, lat2);
+      data = store.data(autoResolution ? chooseResolution(view) : resolution);
+      level = lodLevel(data, view);
+      asked = System.nanoTime();
+      fine = this;
+    }
+
+    MapFrame(MapFrame f, RANGSData d) {
+      // f, to be drawn from d first.
+      lon1 = f.lon1;
+      lat1 = f.lat1;
+      lon2 = f.lon2;
+      lat2 = f.lat2;
+      width = f.width;
+      height = f.height;
+      version = f.version;
+      flags = f.flags;
+      tolerance = f.tolerance;
+      colors = f.colors;
+      view = f.view;
+      data = d;
+      level = lodLevel(d, view);
+      asked = f.asked;
+      fine = f;
+    }
+
+    boolean sameAs(MapFrame f) {
+      return lon1 == f.lon1 && lat1 == f.lat1 && lon2 == f.lon2 && lat2 == f.lat2
+        && width == f.width && height == f.height && version == f.version
+        && data == f.data && level == f.level;
+    }
+  }  // end inner class MapFrame
+
+  class MapRenderer extends Thread {
+    // draws requested frames, one at a time, newest first.
+
+    MapRenderer() {
+      super("rangs renderer");
+      setDaemon(true);
+    }
+
+    public void run() {
+      MapFrame f;
+      int gen;
+
+      while (true) {
+        synchronized (renderLock) {
+          while (pending == null) {
+            try {
+              renderLock.wait();
+            } catch (InterruptedException e) {
+              return;
+            }
+          }
+          f = pending;
+          pending = null;
+          gen = generation;
+        }
+        if (f.width <= 0 || f.height <= 0) continue;
+
+        int at[] = incremental ? shiftFrom(lastDrawn, f) : null;
+        if (at != null) {
+          // panned: no coarse pass, the shift is quicker.
+          f.image = shift(f, lastDrawn, at[0], at[1], gen);
+          if (f.image != null) publish(f, true);
+          continue;
+        }
+
+        MapFrame coarse = null;
+        RANGSData d = coarsest();
+        if (progressive && f.data != null && d != null && d != f.data) {
+          // something to look at while the fine map is drawn.
+          coarse = new MapFrame(f, d);
+          coarse.image = draw(coarse, gen);
+          if (coarse.image == null) continue;
+          publish(coarse, false);
+        }
+        if (coarse == null) f.image = draw(f, gen);
+        else f.image = refine(f, coarse.image, gen);
+        if (f.image != null) publish(f, true);
+      }
+    }
+
+    BufferedImage draw(MapFrame f, int gen) {
+      // f drawn in a new image, or null if cancelled.
+      BufferedImage img = takeImage(f);
+      Graphics g = img.getGraphics();
+      g.setColor(getBackground());
+      g.fillRect(0, 0, f.width, f.height);
+      boolean done = drawRANGS(g, f, gen, threads);
+      g.dispose();
+      if (done) return img;
+      giveBack(img);
+      return null;
+    }
+
+    BufferedImage refine(MapFrame f, BufferedImage shownImg, int gen) {
+      /* draws f a few rows at a time, north to south, and
+      ** copies each lot of rows over the coarse map on
+      ** screen as soon as it is done.  The rows are drawn
+      ** into their own image, in the same order as a
+      ** straight drawRANGS, so the finished map is the same.
+      */
+      BufferedImage img = takeImage(f);
+      Graphics g = img.getGraphics();
+      int north = Math.min((int)Math.ceil((double)f.lat1), 89);
+      int south = Math.max((int)Math.floor((double)f.lat2), -90);
+      int rows = north - south + 1, groups = Math.min(rows, 8), k;
+      boolean done = true;
+
+      g.setColor(getBackground());
+      g.fillRect(0, 0, f.width, f.height);
+      for (k = 0; k < groups && done; k++) {
+        int top = north - k*rows/groups, bottom = north - (k + 1)*rows/groups + 1;
+        done = drawBands(g, f, gen, threads, top, bottom);
+        if (!done) break;
+        int y0 = Math.max(f.view.y(top + 1) - 1, 0);
+        int y1 = Math.min(f.view.y(bottom) + 2, f.height);
+        if (y1 <= y0) continue;
+        synchronized (shownImg) {
+          Graphics sg = shownImg.getGraphics();
+          sg.drawImage(img.getSubimage(0, y0, f.width, y1 - y0), 0, y0, null);
+          sg.dispose();
+        }
+        repaint(0, y0, f.width, y1 - y0);
+      }
+      g.dispose();
+      if (done) return img;
+      giveBack(img);
+      return null;
+    }
+
+    int[] shiftFrom(MapFrame last, MapFrame f) {
+      /* how many pixels across and down the map last must
+      ** move to become f, or null if f is not last moved by
+      ** whole pixels, leaving some of it on screen.
+      */
+      if (last == null || last.image == null || last.width != f.width || last.height != f.height
+          || last.version != f.version || last.data != f.data || last.level != f.level
+          || !f.view.sameScale(last.view, f.width, f.height)) return null;
+      double sx = f.view.shiftX(last.view), sy = f.view.shiftY(last.view);
+      int dx = (int)Math.rint(sx), dy = (int)Math.rint(sy);
+      if (Math.abs(sx - dx) > 0.05 || Math.abs(sy - dy) > 0.05
+          || Math.abs(dx) >= f.width || Math.abs(dy) >= f.height) return null;
+      return new int[] {dx, dy};
+    }
+
+    BufferedImage shift(MapFrame f, MapFrame last, int dx, int dy, int gen) {
+      /* f drawn by copying last's map dx, dy pixels along
+      ** and drawing only the strips along the edges that
+      ** leaves bare; null if cancelled.
+      */
+      BufferedImage img = takeImage(f);
+      Graphics g = img.getGraphics();
+      int x0 = Math.max(dx, 0), x1 = f.width + Math.min(dx, 0);
+      boolean done = true;
+
+      g.drawImage(last.image, dx, dy, null);
+      if (dx > 0) done = strip(g, f, 0, 0, dx, f.height, gen);
+      else if (dx < 0) done = strip(g, f, x1, 0, -dx, f.height, gen);
+      if (done && dy > 0) done = strip(g, f, x0, 0, x1 - x0, dy, gen);
+      else if (done && dy < 0) done = strip(g, f, x0, f.height + dy, x1 - x0, -dy, gen);
+      g.dispose();
+      if (done) return img;
+      giveBack(img);
+      return null;
+    }
+
+    boolean strip(Graphics g, MapFrame f, int x, int y, int w, int h, int gen) {
+      // draws only the pixels x, y, w by h of f: the cells
+      // that reach them, clipped to them.
+      Viewport v = f.view;
+      int north = Math.min((int)Math.floor(v.lat(y - 2)), Math.min((int)Math.ceil((double)f.lat1), 89));
+      int south = Math.max((int)Math.floor(v.lat(y + h + 2)), Math.max((int)Math.floor((double)f.lat2), -90));
+      int west = Math.max((int)Math.floor(v.lon(x - 2)), (int)Math.floor((double)f.lon1));
+      int east = Math.min((int)Math.floor(v.lon(x + w + 2)), (int)Math.ceil((double)f.lon2));
+      Graphics sg = g.create();
+      sg.clipRect(x, y, w, h);
+      sg.setColor(getBackground());
+      sg.fillRect(x, y, w, h);
+      boolean done = f.data == null || drawRows(sg, f, newContext(f), north, south, west, east, gen);
+      sg.dispose();
+      return done;
+    }
+
+    void publish(final MapFrame f, final boolean last) {
+      // puts f on screen, on the event thread.
+      if (last) lastDrawn = f;
+      SwingUtilities.invokeLater(new Runnable() {
+        public void run() {
+          long t = System.nanoTime() - f.asked;
+          if (shown != null && shown.image != f.image) giveBack(shown.image);
+          shown = f;
+          if (timed != f.fine) {
+            timed = f.fine;
+            firstPixelTime = t;
+          }
+          if (last) finalFrameTime = t;
+          repaint();
+          if (last && parent != null) parent.updateStatus(" Click on the map to center at that point.");
+        }
+      });
+    }
+  }  // end inner class MapRenderer
+
+  void setView(float ln1, float lt1, float ln2, float lt2)
+  {
+    // sets the map corners.
+    lon1 = ln1;
+    lon2 = ln2;
+    lat1 = lt1;
+    lat2 = lt2;
+    viewChanged();
+  }  // setView
 
   /****************************
   ** Scroll Routines.  Pretty self-explanatory.
@@ -309,44 +979,51 @@ public class rangs extends JPanel implements Printable {
 
   public void scrollUp() 
   {
-    if (lat1 < 88) {
-      lat1 += (lat1-lat2)/4;
-      lat2 += (lat1-lat2)/4;
-      parent.updateLatLon(lat1, lon1, lat2, lon2);
-      repaint();
-    }
+    if (lat1 < 88) pan(0, getHeight()/4);
   }  //scrollUp
 
   public void scrollDown()
   {
-    if (lat2 > -88) {
-      lat1 -= (lat1-lat2)/4;
-      lat2 -= (lat1-lat2)/4;
-      parent.updateLatLon(lat1, lon1, lat2, lon2);
-      repaint();
-    }
+    if (lat2 > -88) pan(0, -getHeight()/4);
   }  // scrollDown
 
   public void scrollRight()
   {
-    lon1 += (lon2-lon1)/4;
-    lon2 += (lon2-lon1)/4;
-    if (lon1 >= 360) lon1 -= 360;
-    if (lon2 >= 360) lon2 -= 360;
-    parent.updateLatLon(lat1, lon1, lat2, lon2);
-    repaint();
+    pan(-getWidth()/4, 0);
   }  //scrollRight
 
   public void scrollLeft()
   {
-    lon1 -= (lon2-lon1)/4;
-    lon2 -= (lon2-lon1)/4;
-    if (lon1 < 0 ) lon1 += 360;
-    if (lon2 < 0 ) lon2 += 360;
-    parent.updateLatLon(lat1, lon1, lat2, lon2);
-    repaint();
+    pan(getWidth()/4, 0);
   } //scrollLeft
 
+  public void pan(int dx, int dy)
+  {
+    /* moves the map dx pixels right and dy pixels down on
+    ** screen, so that what was at x, y is now at x+dx,
+    ** y+dy.  Whole pixels, so the map already drawn can be
+    ** shifted along and only the strips it uncovers drawn.
+    ** Stops at the poles.
+    */
+    fixView();
+    Viewport v = makeViewport();
+    double degX = v.lon(1) - v.lon(0), degY = v.lat(0) - v.lat(1);  // per pixel
+
+    if (lat1 + dy*degY > 89) dy = Math.max(0, (int)Math.floor((89 - lat1)/degY));
+    if (lat2 + dy*degY < -90) dy = Math.min(0, (int)Math.ceil((-90 - lat2)/degY));
+    if (dx == 0 && dy == 0) return;
+    lon1 -= dx*degX;
+    lon2 -= dx*degX;
+    lat1 += dy*degY;
+    lat2 += dy*degY;
+    if (lon1 < 0) lon1 += 360;
+    if (lon2 < 0) lon2 += 360;
+    if (lon1 >= 360) lon1 -= 360;
+    if (lon2 >= 360) lon2 -= 360;
+    if (parent != null) parent.updateLatLon(lat1, lon1, lat2, lon2);
+    viewChanged();
+  }  // pan
+
   /********************************
   ** End of Scroll Routines
   ********************************/
@@ -367,7 +1044,7 @@ public class rangs extends JPanel implements Printable {
       lon1 += dx;
       lon2 -= dx;
       parent.updateLatLon(lat1, lon1, lat2, lon2);
-      repaint();
+      mapChanged();
     }
   }  // zoomIn
 
@@ -384,16 +1061,56 @@ public class rangs extends JPanel implements Printable {
     if (lat1 > 89) lat1 = 89;
     if (lat2 < -90) lat2 = -90;
     parent.updateLatLon(lat1, lon1, lat2, lon2);
-    repaint();
+    mapChanged();
   }  // zoomOut
 
+  public void zoomAt(int x, int y, double ticks)
+  {
+    /* zooms 10% a tick around pixel x, y, which stays put:
+    ** in for ticks < 0 (the wheel turned away from the
+    ** user), out for ticks > 0.  The map on screen is
+    ** stretched over the new view at once, and the new map
+    ** asked for only when the ticks stop, so a spin of the
+    ** wheel draws one map however fine the resolution.
+    */
+    fixView();
+    Viewport v = makeViewport();
+    double lon = v.lon(x), lat = v.lat(y), f = Math.pow(1.1, ticks);
+    double west = lon1, east = lon2 + 1, north = lat1 + 1, south = lat2;
+
+    // the view takes in a degree past lon2 and lat1, so it
+    // is at least that wide and tall; and at most the world.
+    f = Math.max(f, 1.002/Math.min(east - west, north - south));
+    f = Math.min(f, Math.max(1, 361/(east - west)));
+    lon1 = (float)(lon + (west - lon)*f);
+    lon2 = (float)(lon + (east - lon)*f - 1);
+    lat1 = (float)(lat + (north - lat)*f - 1);
+    lat2 = (float)(lat + (south - lat)*f);
+    if (lat1 > 89) lat1 = 89;
+    if (lat2 < -90) lat2 = -90;
+    if (parent != null) parent.updateLatLon(lat1, lon1, lat2, lon2);
+
+    zooming = true;
+    if (wheelTimer == null) {
+      wheelTimer = new javax.swing.Timer(WHEEL_QUIET, new ActionListener() {
+        public void actionPerformed(ActionEvent e) {
+          zooming = false;
+          repaint();
+        }
+      });
+      wheelTimer.setRepeats(false);
+    }
+    wheelTimer.restart();
+    viewChanged();
+  }  // zoomAt
+
   public void stretchLong() {
     // stretch longitudinally by 10%
     double dx = Math.abs((lon1-lon2)/10.0);
     lon1 += dx;
     lon2 -= dx;
     parent.updateLatLon(lat1, lon1, lat2, lon2);
-    repaint();
+    mapChanged();
   }
 
   public void stretchLat() {
@@ -402,7 +1119,7 @@ public class rangs extends JPanel implements Printable {
     lat1 -= dy;
     lat2 += dy;
     parent.updateLatLon(lat1, lon1, lat2, lon2);
-    repaint();
+    mapChanged();
   }
 
   /********************************
@@ -412,19 +1129,68 @@ public class rangs extends JPanel implements Printable {
   public void setResolution(int i)
   {
     // change the map resolution to value i.
-    // 0 = finest, 4 = coarsest.
-    if (i != resolution) {
+    // 0 = finest, 4 = coarsest, AUTO = whichever suits
+    // the scale of the map.  Files already opened for
+    // other resolutions stay open.
+    if (i == AUTO) {
+      if (!autoResolution) {
+        autoResolution = true;
+        mapChanged();
+      }
+    }
+    else if (i != resolution || autoResolution) {
+      autoResolution = false;
       resolution = i;
-      if (useCelCache) celCache.clear();
-      if (useCelCache) celCache2.clear();
-      if (useCatCache) catCache.clear();
-      if (useRimCache) rimCache.clear();
-      closeRANGSFiles();
       openRANGSFiles();
-      repaint();
+      mapChanged();
     }
   }  // setResolution
 
+  public int getResolution()
+  {
+    // the resolution the map is drawn at: the one chosen
+    // when it is AUTO.
+    RANGSData d = store.data(autoResolution ? chooseResolution(makeViewport()) : resolution);
+    return d == null ? resolution : d.resolution();
+  }  // getResolution
+
+  public boolean isAutoResolution() {
+    return autoResolution;
+  }
+
+  void setAutoPixels(double px)
+  {
+    // in AUTO, use the coarsest resolution whose points
+    // are at most px pixels apart.
+    autoPixels = px;
+    mapChanged();
+  }  // setAutoPixels
+
+  void setLodPixels(double px)
+  {
+    /* draw from the simplified cells of the sidecar file,
+    ** where there is one, when they are at most px pixels
+    ** off the full ones.  0 always draws the full cells.
+    */
+    lodPixels = px;
+    mapChanged();
+  }  // setLodPixels
+
+  private int lodLevel(RANGSData d, Viewport v)
+  {
+    // the level of simplified cells to draw d with in v,
+    // -1 for the full cells.
+    RANGSLod lod = (d == null || lodPixels <= 0) ? null : store.lod(d.resolution());
+    return lod == null ? -1 : lod.levelFor(Math.abs(v.pixelsPerDegree()), lodPixels);
+  }  // lodLevel
+
+  private int chooseResolution(Viewport v)
+  {
+    // the resolution AUTO draws the view v with.
+    int r = RANGSData.resolutionFor(Math.abs(v.pixelsPerDegree()), autoPixels, store.available());
+    return r < 0 ? resolution : r;
+  }  // chooseResolution
+
   public void setDetail(int i)
   {
     // change the map level of detail.
@@ -457,388 +1223,57 @@ public class rangs extends JPanel implements Printable {
       flags = flags >> 8;
       flags = flags & 30;
     }
-    repaint();
+    mapChanged();
   } // setDetail
 
   /*********************************
   ** Low level mapping routines
   *********************************/
 
-  private void drawRANGSCell(int i, int j, Graphics g)
+  private void drawRANGSCell(RANGSData d, int level, int i, int j, RenderContext rc, Graphics g)
   {
     /* draws a map cell given by latitude i, 
-    ** longitude j.
+    ** longitude j, simplified to level.  A cell that is
+    ** one plain square is left to rc to fill, undecoded.
     */
-    int ix, iy, xOffset;
-    byte mybyte=0, addrByte[];
-    int addr=0, count=0;
-    Object o;
-
-    addrByte = new byte[4];
+    int ix, iy, xOffset, cls;
+    RANGSCell c;
 
     ix = ((j % 360) + 360) % 360;
     xOffset = j - ix ;
     iy = i;
-    catPos = 4*((89-iy)*360+ix);
+    if (iy > 89 || iy < -90) return; // no cells beyond the poles
 
-    // first search cache.
-    if (useCatCache && ((catCache.get(new Long(catPos)) != null))) {
-      // found!
-      o = catCache.get(new Long(catPos));
-      celPos = ((Long)o).longValue();
-      catPos += 4;
-    }
-    else {
-      // not found or not using cache, read from file.
-      try {
-	// read from cat file and get the address.
-      	hCAT.seek(catPos);
-	hCAT.readFully(addrByte);
-	celPos = (long)RANGSBytesToInt(addrByte) - 1;
-	catCache.put(new Long(catPos), new Long(celPos)); 
-	catPos += 4;
-      } catch(IOException e) {
-	JOptionPane.showMessageDialog( this, "Error reading record in cat file", "Error", JOptionPane.ERROR_MESSAGE);
-	System.exit (-1);
-      }
-    }
-
-    count = 0;
-    // read from cel file and get the opcode.
-    // first search cache.
-    if (useCelCache && ((celCache.get(new Long(celPos)) != null))) {
-      // found!
-      o = celCache.get(new Long(celPos));
-      opcode = ((Integer)o).intValue();
-      celPos++;
+    try {
+      cls = d.cellClass(ix, iy);
+    } catch (IOException e) {
+      cls = RANGSData.MIXED;  // getCell will say what is wrong
     }
-    else {
-      // not found or not using cache, read from file.
-      try {
-	hCEL.seek(celPos);
-	mybyte = hCEL.readByte();
-	opcode = mybyte &0xff;
-	celCache.put(new Long(celPos), new Integer(opcode)); 
-	celPos++;
-     } catch (IOException e) {
-	JOptionPane.showMessageDialog( this, "Error reading opcode in cel file", "Error", JOptionPane.ERROR_MESSAGE);
-	System.exit (-1);
-      }
+    if (cls == RANGSData.EMPTY) return;
+    if (cls >= 0 && rc.fillsUniform()) {
+      rc.fillCell(j, iy, cls, g);
+      return;
     }
-
-    if (opcode != 0) drawRANGSPolygonC(0, xOffset, g);
+    c = getCell(d, level, ix, iy);
+    if (c != null) rc.drawCell(c, xOffset, g);
   }  // drawRANGSCell
 
-
-  private void drawRANGSPolygonC(int lvl, int xOffset, Graphics g)
-  {
-    // retrieve and draw a polygon from the RANGS data.
-    firstShore = true;
-    firstFill = true;
-    byte addrByte[] = new byte[4];
-    int polyID = 0, fill = 0, shore = 0, ok = 1, nPoints = 0, flg = 0, i=0;
-    int piece = 0; // actually unsigned bytes, so do & 0xff
-    byte mybyte = 0;
-    Object o;
-    
-    // get the Polygon ID
-    if (useCelCache && ((celCache.get(new Long(celPos)) != null))) {
-      // found!
-      o = celCache.get(new Long(celPos));
-      polyID = ((Integer)o).intValue();
-      celPos += 4;
-    }
-    else {
-      try {
-	// read from cel file and get the address.
-	hCEL.seek(celPos);
-	hCEL.readFully(addrByte);
-	polyID = RANGSBytesToInt(addrByte);
-	celCache.put(new Long(celPos), new Integer(polyID));
-	celPos += 4;
-      } catch(IOException e) {
-	JOptionPane.showMessageDialog( this, "Error reading record in cel file", "Error", JOptionPane.ERROR_MESSAGE);
-	System.exit (-1);
-      }
-    }
-
-    // now get the piece
-    while (ok == 1) {
-      if (useCelCache && ((celCache.get(new Long(celPos)) != null))) {
-	// found!
-	o = celCache.get(new Long(celPos));
-	piece = ((Integer)o).intValue() & 0xff;
-	celPos++;
-      }
-      else {
-	try {
-	  hCEL.seek(celPos);
-	  mybyte = hCEL.readByte();
-	  piece = mybyte & 0xff;
-	  celCache.put(new Long(celPos), new Integer(piece));
-	  celPos++;
-	} catch (IOException e) {
-	  JOptionPane.showMessageDialog( this, "Error reading record in cel file", "Error", JOptionPane.ERROR_MESSAGE);
-	  System.exit (-1);
-	} 
-      }
-
-      nPoints = piece & 7;
-      flg = piece >> 4;
-      if (nPoints != 0) {
-	i = 1<<(8+flg);
-	fill = 0xffff & flags & i;
-	shore = (flags & (1 << flg)) & 0xffff;
-      }
-
-      switch (nPoints){
-      case 0:
-	ok = 0;
-	break;
-      case 1:
-      case 2:
-      case 3:
-      case 4:
-      case 5:
-      case 6:
-	readCellSegment(nPoints, fill, shore, polyID, xOffset, flg, g);
-	break;
-      case 7:
-	readRimSegment(fill, shore, xOffset, flg, g);
-	break;
-      }
-    }
-
-    if (firstFill == false) {
-      bufferAddLine ( x0Fill, y0Fill, 1, g);
-      bufferRestart ( x0Fill, y0Fill, 1, g);
-    }
-    
-    if (firstShore == false) {
-      bufferAddLine ( x0Shore, y0Shore, 0, g);
-      bufferRestart ( x0Shore, y0Shore, 0, g);
-    }
-
-    int ok1 = 1;
-    while (ok1 != 0) {
-      if (useCelCache && (celCache.get(new Long(celPos)) != null)) {
-	// found!
-	o = celCache.get(new Long(celPos));
-	opcode = ((Integer)o).intValue();
-	celPos++;
-      }
-      else {
-	try {
-	  hCEL.seek(celPos);
-	  mybyte = hCEL.readByte();
-	  opcode = mybyte & 0xff;
-	  celCache.put(new Long(celPos), new Integer(opcode));
-	  celPos++;
-	} catch (IOException e) {
-	  JOptionPane.showMessageDialog( this, "Error reading record in cel file", "Error", JOptionPane.ERROR_MESSAGE);
-	}
-      }
-      if (opcode == 0) {  // no more levels to go.
-	ok1 = 0;
-	bufferRestart (0, 0, 1, g); // empty the fill buffer
-	bufferRestart (0, 0, 0, g); // empty the shore buffer
-      }
-      else drawRANGSPolygonC(lvl + 1, xOffset, g); // drill down another level
-    }
-  }  // drawRANGSPolygonC
-
-  private void readCellSegment (int nPoints, int fill, int shore, int polyID, int xOffset, int flg, Graphics g)
+  private RANGSCell getCell(RANGSData d, int level, int ix, int iy)
   {
-    // reads RANGS line segments
-    int i, x, y;
-    Point pnt = new Point(0,0);
-    byte xCoord[] = new byte[4];
-    byte yCoord[] = new byte[4];
-    Object o;
-
-    for (i = 1; i <= nPoints; i++) {
-
-      if (useCelCache && (celCache2.get(new Long(celPos)) != null)) {
-	// found!
-	o = celCache2.get(new Long(celPos));
-	pnt.setLocation(((Point)o).x, ((Point)o).y);
-	celPos += 8;
-      }
-      else {
-	try {
-	  hCEL.seek(celPos);
-	  hCEL.readFully(xCoord);
-	  hCEL.readFully(yCoord);
-	  pnt.setLocation(RANGSBytesToInt(xCoord), RANGSBytesToInt(yCoord));
-	  celCache2.put(new Long(celPos), new Point(pnt));
-	  celPos += 8;
-	} catch (IOException e) {
-	  JOptionPane.showMessageDialog( this, "Error reading record in cel file", "Error", JOptionPane.ERROR_MESSAGE);
-	}
-      }
-      if (fill != 0) {
-	addFillPoint(xOffset, pnt, flg, g);
-      }
-      if (shore != 0) {
-	if ((flags & 1) != 0) {
-	  addShorePoint(xOffset, pnt, flg, g);
-	}
-	else {
-	  if (polyID >= 0) {
-	    if (i == 1) addShorePoint(xOffset, pnt, flg, g);
-	    else if (i == nPoints) addFinalShorePoint(xOffset, pnt, g);
-	  }
-	}
-      }
-    }
-  }  // readCellSegment
-
-  private void readRimSegment(int fill, int shore, int xOffset, int flg, Graphics g)
-  {
-    // reads RANGS data for cell rims
-    int k, nPoints=0, x, y;    
-    byte addrByte[] = new byte[4];
-    byte nPointsByte[] = new byte[4];
-    byte xCoord[] = new byte[4];
-    byte yCoord[] = new byte[4];
-    Point pnt = new Point(0,0);
-    Object o;
-    Vector v;
-
-    if (useCelCache && (celCache2.get(new Long(celPos)) != null)) {
-      // found!
-      o = celCache2.get(new Long(celPos));
-      rimPos = ((Point)o).x;
-      nPoints = ((Point)o).y;
-      celPos += 8;
-    }
-    else {
-      try {
-	// read from cel file and get the address.
-	hCEL.seek(celPos);
-	hCEL.readFully(addrByte);
-	hCEL.readFully(nPointsByte);
-	rimPos = RANGSBytesToInt(addrByte) - 1;
-	nPoints = RANGSBytesToInt(nPointsByte);
-	celCache2.put(new Long(celPos), new Point((int)rimPos, nPoints));
-        celPos += 8;
-      } catch(IOException e) {
-	JOptionPane.showMessageDialog( this, "Error reading record in cel file", "Error", JOptionPane.ERROR_MESSAGE);
-      }
-    }
-
-    if (nPoints == 0) return;
-
-    // finally read rim data and get coordinates
-    if (useRimCache && (rimCache.get(new Long(rimPos)) != null)) {
-      // found!  Now process each point in the Vector.
-      o = rimCache.get(new Long(rimPos));
-      Enumeration enum = ((Vector)o).elements();
-      while (enum.hasMoreElements()) {
-	pnt = (Point)enum.nextElement();
-	if (fill != 0) addFillPoint(xOffset, pnt, flg, g);
-	if (shore != 0) addShorePoint(xOffset, pnt, flg, g);
-	rimPos +=8;
-      }
-    }
-    else {
-      v = new Vector(nPoints);
-      try {
-	hRIM.seek(rimPos);
-      } catch (IOException e) {} // nothing
-    
-      for (k = 0; k < nPoints; k++) {
-	try {
-	  hRIM.readFully(xCoord);
-	  hRIM.readFully(yCoord);
-	} catch (IOException e) {} // nothing
-
-	pnt.setLocation(RANGSBytesToInt(xCoord), RANGSBytesToInt(yCoord));
-	v.addElement(new Point(pnt));
-
-	if (fill != 0) addFillPoint(xOffset, pnt, flg, g);
-	if (shore != 0) addShorePoint(xOffset, pnt, flg, g);
-      }
-      rimCache.put(new Long(rimPos), v);
-      rimPos += 8*nPoints;
-    }
-  }  // readRimSegment
-
-  private void addShorePoint(int xOffset, Point pnt, int flg, Graphics g)
-  {
-    // adds a shore point to the buffer
-    double xpnt, ypnt;
-    xpnt = xOffset + pnt.getX() * 0.000001;
-    ypnt = pnt.getY() * 0.000001;
-    if (firstShore == true) {
-      setShoreColor(flg);
-      g.setColor(clr);
-      bufferRestart(xpnt, ypnt, 0, g);
-      firstShore = false;
-      x0Shore = xpnt;
-      y0Shore = ypnt;
-    }
-    else {
-      bufferAddLine (xpnt, ypnt, 0, g);
-    }
-  }  // addShorePoint
-
-  private void addFillPoint(int xOffset, Point pnt, int flg, Graphics g)
-  {
-    // adds a fill point to the buffer
-    double xpnt, ypnt;
-    xpnt = xOffset + pnt.getX() * 0.000001;
-    ypnt = pnt.getY() * 0.000001;
-    if (firstFill == true) {
-      setFillColor(flg);
-      g.setColor(clr);
-      bufferRestart(xpnt, ypnt, 1, g);
-      firstFill = false;
-      x0Fill = xpnt;
-      y0Fill = ypnt;
-    }
-    else {
-      bufferAddLine(xpnt, ypnt, 1, g);
-    }
-  }  // addFillPoint
-
-
-  private void addFinalShorePoint(int xOffset, Point pnt, Graphics g)
-  {
-    // adds the final shore point to the buffer
-    double xpnt, ypnt;
-    xpnt = xOffset + pnt.getX() * 0.000001;
-    ypnt = pnt.getY() * 0.000001;
-    bufferRestart (xpnt, ypnt, 0, g);
-  } // addFinalShorePoint
-
-  private void setShoreColor(int flg)
-  {
-    // set the default color for the shore line.
-    if (flg <= 4) {
-      clr = mapColor[5];
-      return;
-    }
-    else if (flg == 17) {
-      clr = mapColor[6];
-      return;
+    // returns the decoded cell, from the cache if it's there.
+    try {
+      return store.getCell(d, level, ix, iy);
+    } catch (IOException e) {
+      JOptionPane.showMessageDialog( this, "Error reading record in cel file", "Error", JOptionPane.ERROR_MESSAGE);
+      return null;
     }
-    else clr = mapColor[7];
-  }  // setShoreColor
+  }  // getCell
 
-  private void setFillColor(int flg)
+  public String cacheStats()
   {
-    // set the default color to fill with.
-    if (flg <= 4) { 
-      clr = mapColor[flg];
-      return;
-    }
-    else if (flg == 17) {
-      clr = mapColor[6];
-      return;
-    }
-    else clr = mapColor[7];
-  }  //setFillColor
+    // hit rate and memory of the cell cache, for rangsBench.
+    return store.cacheStats();
+  }  // cacheStats
 
   public Color getColor(int i) {
     // returns the Color object for each map feature.
@@ -856,151 +1291,44 @@ public class rangs extends JPanel implements Printable {
   public void setColor(int i, Color c) {
     if (!mapColor[i].equals(c)) {
       mapColor[i] = c;
-      repaint();
+      mapChanged();
     }
   }  // setColor
 
-  private void bufferAddLine(double x, double y, int fill, Graphics g)
-  {
-    // add another point to the line defined in the buffer.
-    int coord[] = {0, 0};
-    coord = transform(x,y);
-    if (fill != 0) {
-	fillPixels++;
-      fillPixel[fillPixels].setLocation(coord[0], coord[1]);
-      if (fillPixels == Array.getLength(fillPixel)) bufferRestart(x, y, fill, g);
-	
-    }
-    else {
-	shorePixels++;
-	shorePixel[shorePixels].setLocation(coord[0], coord[1]);
-
-      if (shorePixels == Array.getLength(shorePixel)) bufferRestart(x, y, fill, g);
-    }
-  }  // bufferAddLine
-
-  private void bufferRestart(double x, double y, int fill, Graphics g)
-  {
-    // draw and clear the buffer
-    MyPolygon p;
-    int coord[] = {0, 0};
-
-    int[][] lineCoords = new int[2][fillPixels + 1];
-    if (fill != 0) {
-      if (fillPixels != 0) {
-	p = new MyPolygon(fillPixel, fillPixels + 1);
-	g.fillPolygon((Polygon)p);
-      }
-      fillPixels = 0;
-      coord = transform(x,y);
-      fillPixel[fillPixels].setLocation(coord[0], coord[1]);
-    }
-    else {
-      if (shorePixels != 0) {
-  	  lineCoords = pointsToArrays(shorePixel);
-	  g.drawPolyline (lineCoords[0], lineCoords[1], lineCoords[0].length);
-      }
-      shorePixels = 0;
-      coord = transform(x,y);
-      shorePixel[shorePixels].setLocation(coord[0], coord[1]);
-    }
-  } // bufferRestart
-	
-  private int[][] pointsToArrays(Point[] p) 
-  {
-    // grabs the x and y coordinates for each p 
-    // and puts the x into the corresponding retPal[0],
-    // and puts the y into the corresponding retVal[1].
-    // Used to process shorePixel[].
-	
-    int i;
-    int[][] retVal = new int[2][shorePixels+1];
-
-    for (i = 0; i < shorePixels+1; i++) {
-      retVal[0][i] = (int)p[i].getX();
-      retVal[1][i] = (int)p[i].getY();
-    }
-    return retVal;
-  }  // pointsToArrays
-
-
-  private int[] transform(double lon, double lat)
-  {
-    // transforms lon/lat into screen x/y coordinates.
-    // simple transform for now, add fancy ones later.
-    // retVal[0] contains the screen x coordinates, retVal[1]
-    // contains the screen y.
-    int retVal[] = {0, 0};
-    Rectangle r = this.getBounds();
-    Insets i = this.getInsets();
-
-    retVal[0] = (int)(i.left + (lon - lon1)*((r.getWidth() - i.left - i.right)/(lon2 - lon1 + 1)));
-    retVal[1] = (int)(i.top + (lat - lat1 - 1 )*((r.getHeight()- i.top - i.bottom)/(lat2 - lat1 - 1)));
-    return retVal;
-  }  // transform
-
-
   private int openRANGSFiles()
   {
-    /* opens the map data files.
+    /* opens the map data files of the current resolution,
+    ** unless they are open already.
     ** returns 0 if failure, 1 if success
     */
-    File f = null;
-
-    try {	
-      f = new File("." + File.separatorChar + "rangs(" + String.valueOf(resolution) + ").cel");
-      hCEL = new RandomAccessFile(f, "r" );
-    } catch (IOException e) {
-      JOptionPane.showMessageDialog( this, "Error opening file " + f.toString(), "Error", JOptionPane.ERROR_MESSAGE);
-      return 0; 
-    }
-
-    try {	 
-      f = new File("." + File.separatorChar + "rangs(" + String.valueOf(resolution) + ").cat");
-      hCAT = new RandomAccessFile( f, "r" );
-    } catch (IOException e) {
-      JOptionPane.showMessageDialog( this, "Error opening file " + f.toString(), "Error", JOptionPane.ERROR_MESSAGE);
-      return 0; 
-    }
     try {	
-      f = new File("."+ File.separatorChar + "gshhs(" + String.valueOf(resolution) + ").rim");
-      hRIM = new RandomAccessFile( f, "r" );
+      store.open(resolution);
     } catch (IOException e) {
-      JOptionPane.showMessageDialog( this, "Error opening file " + f.toString(), "Error", JOptionPane.ERROR_MESSAGE);
+      JOptionPane.showMessageDialog( this, "Error opening file " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
       return 0; 
     }
     return 1;
   }  // openRANGSFiles
 
+  public RANGSStore getStore() {
+    return store;
+  }
+
   public int closeRANGSFiles()
   {
-    /* Closes the map data files.
+    /* Closes the map data files of every resolution,
+    ** unless the store is shared: its owner closes it.
     ** returns 1.
     */
+    if (!ownStore) return 1;
     try {
-      if (hCEL != null) hCEL.close();
-    } catch ( IOException e) {
-      JOptionPane.showMessageDialog( this, "Error closing file", "Error", JOptionPane.ERROR_MESSAGE);
-    }
-    try {
-      if (hCAT != null) hCAT.close();
-    } catch ( IOException e) {
-      JOptionPane.showMessageDialog( this, "Error closing file", "Error", JOptionPane.ERROR_MESSAGE);
-    }
-    try {
-      if (hRIM != null) hRIM.close();
+      store.close();
     } catch ( IOException e) {
       JOptionPane.showMessageDialog( this, "Error closing file", "Error", JOptionPane.ERROR_MESSAGE);
     }
     return 1;
   } // closeRANGSFiles
 
-  private int RANGSBytesToInt(byte a[])
-    {
-      // expects 4 bytes to be passed in.  Grinds them
-      // up and spits out a long in proper format 
-	return (UnsignedByte.toInt(a[3])*0x1000000 + UnsignedByte.toInt(a[2])*0x10000 + UnsignedByte.toInt(a[1])*0x100 + UnsignedByte.toInt(a[0]));
-    }  // RANGSBytesToInt
 
 }
 
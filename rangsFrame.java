@@ -92,6 +92,11 @@ public class rangsFrame extends JApplet
 
     for (int i = 0; i < resolutionItems.length; i++) {
       if (e.getSource() == resolutionItems[i] && resolutionItems[i].isSelected()) {
+        if (i == 5) {
+          updateStatus(" Choosing the resolution to suit the scale.");
+          myMap.setResolution(rangs.AUTO);
+          return;
+        }
 	updateStatus(" Changing Resolution level to " + i + ".");
         myMap.setResolution(i);
 	return;
@@ -393,7 +398,7 @@ public class rangsFrame extends JApplet
     // format/level of map resolution
     JMenu resolutionMenu = new JMenu("Resolution");
     resolutionMenu.setMnemonic('R');
-    String res[] = { "Finest", "Fine", "Medium", "Coarse", "Coarsest" };
+    String res[] = { "Finest", "Fine", "Medium", "Coarse", "Coarsest", "Auto" };
     resolutionItems = new JRadioButtonMenuItem[res.length];
     resolutionGroup = new ButtonGroup();
     for (int i = 0; i < res.length; i++) {
@@ -402,7 +407,7 @@ public class rangsFrame extends JApplet
       resolutionGroup.add(resolutionItems[i]);
       resolutionItems[i].addActionListener(this);
     }
-    resolutionItems[res.length - 2].setSelected(true);
+    resolutionItems[3].setSelected(true);
     formatMenu.add(resolutionMenu);
     formatMenu.addSeparator();
 
@@ -0,0 +1,121 @@
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+
+public class rangsLod {
+
+  /* Makes the rangs(N).lod sidecar files of simplified
+  ** cells (see RANGSLod), and reports for each level how
+  ** many vertices and bytes it holds against the full
+  ** cells, and how long a warm world map takes from it.
+  **
+  ** usage: java rangsLod [-dir d] [-res 3,4] [-levels t1,t2,..] [-report]
+  **
+  ** -levels are the tolerances in micro-degrees, finest
+  ** first (15625,62500,250000: 1/64, 1/16 and 1/4 of a
+  ** degree).  -report only reports on the files there are.
+  ** Resolutions whose files are not in dir are skipped.
+  *************************************/
+
+  public static void main(String args[]) throws Exception
+  {
+    System.setProperty("java.awt.headless", "true");
+    File dir = new File(".");
+    int res[] = {0, 1, 2, 3, 4}, levels[] = RANGSLod.TOLERANCES;
+    boolean report = false;
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        if (args[i].equals("-dir")) dir = new File(args[++i]);
+        else if (args[i].equals("-res")) res = rangsBench.parseList(args[++i]);
+        else if (args[i].equals("-levels")) levels = rangsBench.parseList(args[++i]);
+        else if (args[i].equals("-report")) report = true;
+        else throw new IllegalArgumentException("unknown option " + args[i]);
+      }
+    } catch (RuntimeException e) {
+      System.err.println(e.getMessage());
+      System.err.println("usage: java rangsLod [-dir d] [-res 3,4] [-levels t1,t2,..] [-report]");
+      System.exit(1);
+    }
+
+    for (int i = 0; i < res.length; i++) {
+      RANGSData d;
+      try {
+        d = RANGSData.open(dir, res[i]);
+      } catch (IOException e) {
+        continue;
+      }
+      if (!report) {
+        long t = System.nanoTime();
+        RANGSLod.write(d, dir, levels);
+        System.out.println(RANGSLod.file(dir, res[i]) + " made in " + (System.nanoTime() - t)/1000000 + " ms");
+      }
+      report(dir, d);
+      d.close();
+    }
+  } // main
+
+  static void report(File dir, RANGSData d) throws IOException
+  {
+    // vertices, bytes and world render time of each level.
+    RANGSStore store = new RANGSStore(dir, 256L << 20);
+    RANGSLod lod = store.lod(d.resolution());
+    if (lod == null) {
+      System.out.println("resolution " + d.resolution() + ": no usable " + RANGSLod.file(dir, d.resolution()));
+      return;
+    }
+    long full[] = vertices(store, d, -1), v[];
+    long bytes = new File(dir, "rangs(" + d.resolution() + ").cel").length()
+      + new File(dir, "gshhs(" + d.resolution() + ").rim").length();
+
+    System.out.println("res  level  tolerance deg  pixels/deg at 1 px  vertices  of full  rim vertices  of full  bytes  world ms");
+    System.out.println(d.resolution() + "  full  0  -  " + full[0] + "  100%  " + full[1] + "  100%  "
+                       + bytes + "  " + world(store, d, -1));
+    for (int l = 0; l < lod.levels(); l++) {
+      v = vertices(store, d, l);
+      System.out.println(d.resolution() + "  " + l + "  " + lod.tolerance(l)
+                         + "  " + String.format("%.1f", 1/lod.tolerance(l)) + "  " + v[0]
+                         + "  " + String.format("%.1f%%", 100.0*v[0]/full[0]) + "  " + v[1]
+                         + "  " + String.format("%.1f%%", 100.0*v[1]/full[1])
+                         + "  " + lod.bytes(l) + "  " + world(store, d, l));
+    }
+    store.close();
+  }  // report
+
+  static long[] vertices(RANGSStore store, RANGSData d, int level) throws IOException
+  {
+    // vertices of every cell at level, and how many of
+    // them are in rim pieces.
+    long n = 0, rim = 0;
+    for (int iy = 89; iy >= -90; iy--)
+      for (int ix = 0; ix < 360; ix++) {
+        RANGSCell c = store.getCell(d, level, ix, iy);
+        n += c.vertices();
+        for (int k = 0; k < c.pieces(); k++)
+          if (c.isRim(k)) rim += c.endVertex(k) - c.firstVertex(k);
+      }
+    return new long[] {n, rim};
+  }  // vertices
+
+  static String world(RANGSStore store, RANGSData d, int level) throws IOException
+  {
+    // best of three warm 1440x720 world maps from level.
+    BufferedImage img = new BufferedImage(1440, 720, BufferedImage.TYPE_INT_RGB);
+    Graphics g = img.getGraphics();
+    HeadlessMap map = new HeadlessMap(store, d.resolution());
+    long best = Long.MAX_VALUE;
+
+    // the map picks the level from the scale: ask for one
+    // that lands exactly on it.
+    RANGSLod lod = store.lod(d.resolution());
+    map.setLodPixels(level < 0 ? 0 : lod.tolerance(level)*4);
+    for (int r = 0; r < 4; r++) {
+      long t = System.nanoTime();
+      map.drawBox(g, 0, 90, 360, -90, img.getWidth(), img.getHeight());
+      if (r > 0) best = Math.min(best, System.nanoTime() - t);
+    }
+    g.dispose();
+    return String.format("%.1f", best/1e6);
+  }  // world
+
+}
@@ -0,0 +1,104 @@
+import java.io.*;
+
+public class rangsPack {
+
+  /* Converts RANGS resolutions into single rangs(N).pak
+  ** files (see PackedRANGSData), which RANGSData.open then
+  ** reads instead of the cat, cel and rim files.  Reports
+  ** the size of each against the three files, and a cold
+  ** and a warm world map from each.
+  **
+  ** usage: java rangsPack [-dir d] [-res 3,4] [-report]
+  **
+  ** -report only reports on the packs there are.
+  ** Resolutions whose files are not in dir are skipped.
+  ** Cold is a new map with an empty cell cache; the files
+  ** may still be in the operating system's cache.  Each
+  ** reader draws once before the timing starts, to warm up
+  ** the JIT.
+  *************************************/
+
+  public static void main(String args[]) throws Exception
+  {
+    System.setProperty("java.awt.headless", "true");
+    File dir = new File(".");
+    int res[] = {0, 1, 2, 3, 4};
+    boolean report = false;
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        if (args[i].equals("-dir")) dir = new File(args[++i]);
+        else if (args[i].equals("-res")) res = rangsBench.parseList(args[++i]);
+        else if (args[i].equals("-report")) report = true;
+        else throw new IllegalArgumentException("unknown option " + args[i]);
+      }
+    } catch (RuntimeException e) {
+      System.err.println(e.getMessage());
+      System.err.println("usage: java rangsPack [-dir d] [-res 3,4] [-report]");
+      System.exit(1);
+    }
+
+    rangsBench.dir = dir;
+    if (res.length > 0) warmUp(res[res.length - 1], dir);
+    System.out.println("res  files  bytes  open ms  cold ms  warm ms  reads cold");
+    for (int i = 0; i < res.length; i++) {
+      File cat = new File(dir, "rangs(" + res[i] + ").cat");
+      File cel = new File(dir, "rangs(" + res[i] + ").cel");
+      File rim = new File(dir, "gshhs(" + res[i] + ").rim");
+      File pak = new File(dir, "rangs(" + res[i] + ").pak");
+
+      if (!report) {
+        RANGSData d = rangsBench.open(res[i], true);
+        if (d == null) continue;
+        long t = System.nanoTime();
+        PackedRANGSData.write(d, pak, cel, rim);
+        d.close();
+        System.out.println(pak + " made in " + (System.nanoTime() - t)/1000000 + " ms");
+      }
+      long trio = cat.length() + cel.length() + rim.length();
+      if (cel.exists()) {
+        run(res[i], "cat+cel+rim, file", trio, false, dir);
+        run(res[i], "cat+cel+rim, mapped", trio, true, dir);
+      }
+      if (pak.exists()) run(res[i], "pak", pak.length(), false, null);
+    }
+  } // main
+
+  static void warmUp(int res, File dir) throws IOException
+  {
+    // draws from each reader once, unreported, so that the
+    // first one timed is not also the one the JIT learns on.
+    PrintStream out = System.out;
+    System.setOut(new PrintStream(new ByteArrayOutputStream()));
+    try {
+      run(res, "", 0, false, dir);
+      run(res, "", 0, true, dir);
+      run(res, "", 0, false, null);
+    } finally {
+      System.setOut(out);
+    }
+  }  // warmUp
+
+  static void run(int res, String name, long bytes, boolean mapped, File trio) throws IOException
+  {
+    // opens res from the trio of files in trio, or the pack
+    // if trio is null, and draws the world twice.
+    long t = System.nanoTime();
+    RANGSData d;
+    try {
+      d = (trio == null) ? RANGSData.openPacked(rangsBench.dir, res) : RANGSData.open(trio, res, mapped);
+    } catch (IOException e) {
+      System.out.println(res + "  " + name + ": " + e.getMessage());
+      return;
+    }
+    long open = System.nanoTime() - t;
+    rangs map = new rangs(res, d);
+    long cold = rangsBench.renderWorld(map);
+    long reads = d.reads();
+    long warm = rangsBench.renderWorld(map);
+    System.out.println(res + "  " + name + "  " + bytes + "  " + String.format("%.1f", open/1e6)
+                       + "  " + cold/1000000 + "  " + warm/1000000 + "  " + reads);
+    d.close();
+  }  // run
+
+}
@@ -0,0 +1,132 @@
+import java.io.*;
+import java.util.concurrent.atomic.*;
+
+public class rangsPyramid {
+
+  /* Renders every tile of a zoom range and box into one
+  ** TilePack file, on all cores.
+  **
+  ** usage: java rangsPyramid [-dir d] [-zoom 0-8]
+  **          [-box west,north,east,south] [-detail n]
+  **          [-outline] [-threads n] -o tiles.pack
+  **        java rangsPyramid -get z/x/y -o tiles.pack tile.png
+  **
+  ** The tiles are those of rangsTileServer.  The box is in
+  ** degrees, -180 to 180 (the whole world by default).
+  ** Run it again on the same file after it is stopped and
+  ** it carries on with the tiles still missing.  Tiles of
+  ** open ocean only (every cell under them a plain ocean
+  ** square) are not drawn; they all share one PNG.
+  *************************************/
+
+  public static void main(String args[]) throws Exception
+  {
+    System.setProperty("java.awt.headless", "true");
+    File dir = new File(".");
+    int minZoom = 0, maxZoom = 8, detail = 3;
+    int threads = Runtime.getRuntime().availableProcessors();
+    double box[] = {-180, 90, 180, -90};
+    boolean fill = true;
+    String out = null, get = null, png = null;
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        if (args[i].equals("-dir")) dir = new File(args[++i]);
+        else if (args[i].equals("-detail")) detail = Integer.parseInt(args[++i]);
+        else if (args[i].equals("-outline")) fill = false;
+        else if (args[i].equals("-threads")) threads = Integer.parseInt(args[++i]);
+        else if (args[i].equals("-o")) out = args[++i];
+        else if (args[i].equals("-get")) get = args[++i];
+        else if (args[i].equals("-zoom")) {
+          String s[] = args[++i].split("-");
+          minZoom = Integer.parseInt(s[0]);
+          maxZoom = Integer.parseInt(s[s.length - 1]);
+        }
+        else if (args[i].equals("-box")) {
+          String s[] = args[++i].split(",");
+          for (int k = 0; k < 4; k++) box[k] = Double.parseDouble(s[k]);
+        }
+        else if (get != null && png == null) png = args[i];
+        else throw new IllegalArgumentException("unknown option " + args[i]);
+      }
+      if (out == null) throw new IllegalArgumentException("need -o");
+      if (get != null && png == null) throw new IllegalArgumentException("need a file to write the tile to");
+    } catch (RuntimeException e) {
+      System.err.println(e.getMessage());
+      System.err.println("usage: java rangsPyramid [-dir d] [-zoom 0-8] [-box west,north,east,south] [-detail n] [-outline] [-threads n] -o tiles.pack");
+      System.err.println("       java rangsPyramid -get z/x/y -o tiles.pack tile.png");
+      System.exit(1);
+    }
+
+    if (get != null) {
+      String s[] = get.split("/");
+      TilePack pack = TilePack.open(new File(out));
+      byte b[] = pack.get(Integer.parseInt(s[0]), Integer.parseInt(s[1]), Integer.parseInt(s[2]));
+      pack.close();
+      if (b == null) {
+        System.err.println("tile " + get + " is not in " + out);
+        System.exit(2);
+      }
+      FileOutputStream o = new FileOutputStream(png);
+      o.write(b);
+      o.close();
+      return;
+    }
+
+    TilePack pack = new TilePack(new File(out), minZoom, maxZoom, box[0], box[1], box[2], box[3],
+                                 detail, fill);
+    rangsTileServer tiles = new rangsTileServer(dir, 256L << 20, detail, fill);
+    try {
+      build(tiles, pack, threads);
+    } finally {
+      pack.close();
+    }
+  } // main
+
+  static void build(final rangsTileServer tiles, final TilePack pack, int threads)
+    throws InterruptedException, IOException
+  {
+    /* makes the tiles pack is missing, on threads threads.
+    ** Each thread takes the next tile not yet made.
+    */
+    final AtomicInteger next = new AtomicInteger(), made = new AtomicInteger(), ocean = new AtomicInteger();
+    final IOException failure[] = new IOException[1];
+    Thread t[] = new Thread[Math.max(1, threads)];
+    int before = pack.done();
+    long time = System.nanoTime();
+
+    System.out.println(pack.tiles() + " tiles, " + before + " already made");
+    for (int k = 0; k < t.length; k++) {
+      t[k] = new Thread("pyramid " + k) {
+        public void run() {
+          int i;
+          try {
+            while ((i = next.getAndIncrement()) < pack.tiles()) {
+              if (failure[0] != null) return;
+              if (pack.has(i)) continue;
+              int z = pack.zoom(i), x = pack.tileX(i), y = pack.tileY(i);
+              if (tiles.allOcean(z, x, y)) {
+                if (!pack.putOcean(i)) pack.putOcean(i, tiles.tile(z, x, y));
+                ocean.incrementAndGet();
+              }
+              else pack.put(i, tiles.tile(z, x, y));
+              if (made.incrementAndGet() % 1000 == 0)
+                System.out.println(made.get() + " tiles made, at zoom " + z);
+            }
+          } catch (IOException e) {
+            synchronized (failure) {
+              if (failure[0] == null) failure[0] = e;
+            }
+          }
+        }
+      };
+      t[k].start();
+    }
+    for (int k = 0; k < t.length; k++) t[k].join();
+    time = System.nanoTime() - time;
+    if (failure[0] != null) throw failure[0];
+    System.out.println(made.get() + " tiles made (" + ocean.get() + " all ocean) in "
+                       + time/1000000 + " ms on " + t.length + " threads");
+  }  // build
+
+}
@@ -0,0 +1,218 @@
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.*;
+import javax.imageio.*;
+import com.sun.net.httpserver.*;
+
+public class rangsTileServer {
+
+  /* Serves RANGS maps as 256x256 PNG tiles over HTTP, at
+  ** /{z}/{x}/{y}.png.
+  **
+  ** usage: java rangsTileServer [-dir d] [-port 8080]
+  **          [-detail n] [-outline] [-cache megabytes]
+  **
+  ** The tiles are in plate carree (lon/lat) like the rangs
+  ** panel draws, not web mercator: zoom z is 2^(z+1) tiles
+  ** wide and 2^z tall, x counting east from 180W and y
+  ** south from 90N.  Clients need a geographic (EPSG:4326)
+  ** tile grid.
+  **
+  ** The resolution is chosen from the zoom, coarse for the
+  ** whole world down to full resolution from zoom 10, among
+  ** the resolutions whose files are in dir.  All of them
+  ** share one cache of decoded cells.  Each request runs
+  ** on its own virtual thread where the JVM has them (21
+  ** and later), otherwise on a pooled thread.
+  *************************************/
+
+  public static final int TILE = 256;
+
+  private HeadlessMap maps[] = new HeadlessMap[RANGSData.RESOLUTIONS]; // by resolution, null if missing
+  private RANGSStore store;
+  private HttpServer server;
+  private ExecutorService executor;
+
+  /******************
+  ** Constructors
+  ******************/
+
+  rangsTileServer(File dir, long cacheBytes, int detail, boolean fill) throws IOException {
+    // opens every resolution found in dir.
+    int r, n = 0;
+
+    store = new RANGSStore(dir, cacheBytes);
+    for (r = 0; r < maps.length; r++) {
+      if (store.data(r) == null) continue;
+      maps[r] = new HeadlessMap(store, r);
+      maps[r].setDetail(detail, fill);
+      n++;
+    }
+    if (n == 0) throw new IOException("no RANGS files in " + dir);
+  }
+
+  /*******************
+  ** Methods
+  *******************/
+
+  public static void main(String args[]) throws Exception
+  {
+    System.setProperty("java.awt.headless", "true");
+    File dir = new File(".");
+    int port = 8080, detail = 3;
+    long cache = 256;
+    boolean fill = true;
+
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-dir")) dir = new File(args[++i]);
+      else if (args[i].equals("-port")) port = Integer.parseInt(args[++i]);
+      else if (args[i].equals("-detail")) detail = Integer.parseInt(args[++i]);
+      else if (args[i].equals("-outline")) fill = false;
+      else if (args[i].equals("-cache")) cache = Long.parseLong(args[++i]);
+      else {
+        System.err.println("usage: java rangsTileServer [-dir d] [-port 8080] [-detail n] [-outline] [-cache megabytes]");
+        System.exit(1);
+      }
+    }
+    rangsTileServer s = new rangsTileServer(dir, cache << 20, detail, fill);
+    s.start(port);
+    System.out.println("serving http://localhost:" + s.port() + "/{z}/{x}/{y}.png");
+  } // main
+
+  public static ExecutorService newExecutor()
+  {
+    // a virtual thread per task if this JVM has them,
+    // looked up by name so the code still builds on older
+    // JDKs.
+    try {
+      return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (Exception e) {
+      return Executors.newCachedThreadPool();
+    }
+  }  // newExecutor
+
+  public void start(int port) throws IOException
+  {
+    // port 0 picks a free port; see port().
+    server = HttpServer.create(new InetSocketAddress(port), 0);
+    executor = newExecutor();
+    server.setExecutor(executor);
+    server.createContext("/", new HttpHandler() {
+      public void handle(HttpExchange ex) throws IOException {
+        serve(ex);
+      }
+    });
+    server.start();
+  }  // start
+
+  public int port() {
+    return server.getAddress().getPort();
+  }
+
+  public void stop()
+  {
+    server.stop(0);
+    executor.shutdown();
+    try {
+      store.close();
+    } catch (IOException e) {
+    }
+  }  // stop
+
+  public String cacheStats()
+  {
+    return store.cacheStats();
+  }  // cacheStats
+
+  public int resolutionFor(int z)
+  {
+    /* the resolution to draw zoom z with: the coarsest
+    ** whose points are at most 2 pixels apart, among those
+    ** there are files for.
+    */
+    boolean have[] = new boolean[maps.length];
+    for (int r = 0; r < maps.length; r++) have[r] = maps[r] != null;
+    return RANGSData.resolutionFor(TILE*(1 << z)/180.0, 2, have);
+  }  // resolutionFor
+
+  public boolean allOcean(int z, int x, int y) throws IOException
+  {
+    // true if tile x, y at zoom z is nothing but ocean.
+    double size = 180.0/(1 << z);
+    double west = -180 + x*size, north = 90 - y*size;
+    return maps[resolutionFor(z)].allOcean(west, north, west + size, north - size);
+  }  // allOcean
+
+  public byte[] tile(int z, int x, int y) throws IOException
+  {
+    // the PNG of tile x, y at zoom z.
+    double size = 180.0/(1 << z);
+    double west = -180 + x*size, north = 90 - y*size;
+    HeadlessMap map = maps[resolutionFor(z)];
+    BufferedImage img = new BufferedImage(TILE, TILE, BufferedImage.TYPE_INT_RGB);
+    Graphics g = img.getGraphics();
+
+    try {
+      g.setColor(map.getColor(0));
+      g.fillRect(0, 0, TILE, TILE);
+      map.drawBox(g, west, north, west + size, north - size, TILE, TILE);
+    } finally {
+      g.dispose();
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+    ImageIO.write(img, "png", out);
+    return out.toByteArray();
+  }  // tile
+
+  private void serve(HttpExchange ex) throws IOException
+  {
+    // answers one request for a tile.
+    int z, x, y;
+    byte png[];
+
+    try {
+      String p[] = ex.getRequestURI().getPath().split("/");
+      if (p.length != 4 || !p[3].endsWith(".png")) throw new NumberFormatException();
+      z = Integer.parseInt(p[1]);
+      x = Integer.parseInt(p[2]);
+      y = Integer.parseInt(p[3].substring(0, p[3].length() - 4));
+    } catch (NumberFormatException e) {
+      reply(ex, 404, "not a tile: use /{z}/{x}/{y}.png");
+      return;
+    }
+    if (z < 0 || z > 20 || x < 0 || x >= 2 << z || y < 0 || y >= 1 << z) {
+      reply(ex, 404, "no such tile");
+      return;
+    }
+    try {
+      png = tile(z, x, y);
+    } catch (IOException e) {
+      reply(ex, 500, "error reading RANGS data: " + e.getMessage());
+      return;
+    } catch (RuntimeException e) {
+      // a damaged cell, say: answer, don't leave the client
+      // waiting on a dropped exchange.
+      reply(ex, 500, "error drawing tile: " + e);
+      return;
+    }
+    ex.getResponseHeaders().set("Content-Type", "image/png");
+    ex.getResponseHeaders().set("Cache-Control", "max-age=86400");
+    ex.sendResponseHeaders(200, png.length);
+    OutputStream out = ex.getResponseBody();
+    out.write(png);
+    out.close();
+  }  // serve
+
+  private static void reply(HttpExchange ex, int code, String msg) throws IOException
+  {
+    byte b[] = (msg + "\n").getBytes("UTF-8");
+    ex.getResponseHeaders().set("Content-Type", "text/plain");
+    ex.sendResponseHeaders(code, b.length);
+    OutputStream out = ex.getResponseBody();
+    out.write(b);
+    out.close();
+  }  // reply
+
+}